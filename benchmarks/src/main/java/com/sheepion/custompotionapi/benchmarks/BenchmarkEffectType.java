@@ -0,0 +1,129 @@
+package com.sheepion.custompotionapi.benchmarks;
+
+import com.sheepion.custompotionapi.CustomPotionEffectProperty;
+import com.sheepion.custompotionapi.CustomPotionEffectType;
+import com.sheepion.custompotionapi.StackingPolicy;
+import io.papermc.paper.potion.PotionMix;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Color;
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.LivingEntity;
+
+import java.util.ArrayList;
+
+/**
+ * a custom potion effect type that does almost nothing, so the benchmarks only measure the api.
+ *
+ * @author Sheepion
+ */
+public class BenchmarkEffectType implements CustomPotionEffectType {
+    private final NamespacedKey key;
+    private final boolean cachePotionItem;
+
+    /**
+     * the number of times effect() was called, read it so the work can not be optimized away
+     */
+    public long effectCalls;
+
+    /**
+     * @param key             the namespaced key of the type
+     * @param cachePotionItem if the potion items of the type can be cached
+     */
+    public BenchmarkEffectType(NamespacedKey key, boolean cachePotionItem) {
+        this.key = key;
+        this.cachePotionItem = cachePotionItem;
+    }
+
+    @Override
+    public NamespacedKey getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean canBeApplied(LivingEntity entity, CustomPotionEffectProperty property) {
+        return true;
+    }
+
+    @Override
+    public boolean canBeRemovedByMilk(LivingEntity entity, CustomPotionEffectProperty property) {
+        return true;
+    }
+
+    @Override
+    public StackingPolicy stackingPolicy() {
+        //the benchmarks put many effects of one type on an entity
+        return StackingPolicy.INDEPENDENT;
+    }
+
+    @Override
+    public int maxStacks() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void beforeApply(LivingEntity entity, CustomPotionEffectProperty property) {
+    }
+
+    @Override
+    public void effect(LivingEntity entity, CustomPotionEffectProperty property) {
+        effectCalls++;
+    }
+
+    @Override
+    public ArrayList<PotionMix> potionMixes() {
+        return null;
+    }
+
+    @Override
+    public boolean cachePotionItem() {
+        return cachePotionItem;
+    }
+
+    @Override
+    public Component potionDisplayName(CustomPotionEffectProperty property) {
+        return Component.text("Benchmark Potion " + property.getAmplifier());
+    }
+
+    @Override
+    public ArrayList<Component> potionLore(CustomPotionEffectProperty property) {
+        ArrayList<Component> lore = new ArrayList<>();
+        lore.add(Component.text("duration: " + property.getDuration()));
+        lore.add(Component.text("amplifier: " + property.getAmplifier()));
+        return lore;
+    }
+
+    @Override
+    public Color potionColor(CustomPotionEffectProperty property) {
+        return Color.AQUA;
+    }
+
+    @Override
+    public ArrayList<Component> splashPotionLore(CustomPotionEffectProperty property) {
+        return potionLore(property);
+    }
+
+    @Override
+    public Component splashPotionDisplayName(CustomPotionEffectProperty property) {
+        return Component.text("Benchmark Splash Potion " + property.getAmplifier());
+    }
+
+    @Override
+    public Color splashPotionColor(CustomPotionEffectProperty property) {
+        return Color.AQUA;
+    }
+
+    @Override
+    public ArrayList<Component> lingeringPotionLore(CustomPotionEffectProperty property) {
+        return potionLore(property);
+    }
+
+    @Override
+    public Component lingeringPotionDisplayName(CustomPotionEffectProperty property) {
+        return Component.text("Benchmark Lingering Potion " + property.getAmplifier());
+    }
+
+    @Override
+    public Color lingeringPotionColor(CustomPotionEffectProperty property) {
+        return Color.AQUA;
+    }
+}
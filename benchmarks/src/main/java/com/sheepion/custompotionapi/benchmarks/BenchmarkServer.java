@@ -0,0 +1,49 @@
+package com.sheepion.custompotionapi.benchmarks;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import com.sheepion.custompotionapi.CustomPotionAPI;
+import com.sheepion.custompotionapi.CustomPotionManager;
+import org.bukkit.NamespacedKey;
+
+/**
+ * starts a MockBukkit server with the api loaded, so the benchmarks run offline.
+ *
+ * @author Sheepion
+ */
+public final class BenchmarkServer {
+    private BenchmarkServer() {
+    }
+
+    /**
+     * the registered type whose potion items are cached
+     */
+    public static BenchmarkEffectType cachedType;
+
+    /**
+     * the registered type whose potion items are built every time
+     */
+    public static BenchmarkEffectType uncachedType;
+
+    /**
+     * start the server, load the api and register the benchmark types
+     *
+     * @return the server
+     */
+    public static ServerMock start() {
+        ServerMock server = MockBukkit.mock();
+        CustomPotionAPI plugin = MockBukkit.load(CustomPotionAPI.class);
+        cachedType = new BenchmarkEffectType(new NamespacedKey(plugin, "benchmark_cached"), true);
+        uncachedType = new BenchmarkEffectType(new NamespacedKey(plugin, "benchmark_uncached"), false);
+        CustomPotionManager.registerPotionEffectType(cachedType);
+        CustomPotionManager.registerPotionEffectType(uncachedType);
+        return server;
+    }
+
+    /**
+     * stop the server
+     */
+    public static void stop() {
+        MockBukkit.unmock();
+    }
+}
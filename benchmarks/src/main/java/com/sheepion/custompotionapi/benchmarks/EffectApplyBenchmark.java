@@ -0,0 +1,71 @@
+package com.sheepion.custompotionapi.benchmarks;
+
+import be.seeseemelk.mockbukkit.ServerMock;
+import com.sheepion.custompotionapi.CustomPotionEffect;
+import com.sheepion.custompotionapi.CustomPotionManager;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures applying an effect to an entity and cancelling it again,
+ * and looking up the applied effects of a type.
+ *
+ * @author Sheepion
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EffectApplyBenchmark {
+    /**
+     * the number of other effects already applied to the queried entity
+     */
+    @Param({"1", "16"})
+    public int appliedEffects;
+
+    private CustomPotionEffect effect;
+    private Player applyTarget;
+    private Player queryTarget;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ServerMock server = BenchmarkServer.start();
+        effect = new CustomPotionEffect(BenchmarkServer.cachedType, null, null, 1_000_000, 0, 20, 0);
+        applyTarget = server.addPlayer();
+        queryTarget = server.addPlayer();
+        CustomPotionEffect other = new CustomPotionEffect(BenchmarkServer.uncachedType, null, null, 1_000_000, 0, 20, 0);
+        for (int i = 0; i < appliedEffects; i++) {
+            other.apply(queryTarget);
+        }
+        effect.apply(queryTarget);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkServer.stop();
+    }
+
+    @Benchmark
+    public boolean applyAndCancel() {
+        boolean applied = effect.apply(applyTarget);
+        for (CustomPotionEffect applyTargetEffect : CustomPotionManager.getActivePotionEffects(applyTarget.getUniqueId())) {
+            applyTargetEffect.cancel();
+        }
+        return applied;
+    }
+
+    @Benchmark
+    public ArrayList<CustomPotionEffect> getActivePotionEffect() {
+        return CustomPotionManager.getActivePotionEffect(queryTarget.getUniqueId(), BenchmarkServer.cachedType);
+    }
+
+    @Benchmark
+    public boolean hasEffect() {
+        return CustomPotionManager.hasEffect(queryTarget.getUniqueId(), BenchmarkServer.cachedType);
+    }
+}
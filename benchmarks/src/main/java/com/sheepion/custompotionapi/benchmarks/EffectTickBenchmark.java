@@ -0,0 +1,65 @@
+package com.sheepion.custompotionapi.benchmarks;
+
+import be.seeseemelk.mockbukkit.ServerMock;
+import com.sheepion.custompotionapi.CustomPotionAPI;
+import com.sheepion.custompotionapi.CustomPotionEffect;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures one server tick of the effect engine with many active effects.
+ *
+ * @author Sheepion
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EffectTickBenchmark {
+    /**
+     * the number of active effects
+     */
+    @Param({"10000"})
+    public int activeEffects;
+
+    /**
+     * the number of entities the effects are spread over
+     */
+    @Param({"500"})
+    public int entities;
+
+    /**
+     * the check interval of the effects, 1 makes every effect run every tick
+     */
+    @Param({"1", "20"})
+    public int checkInterval;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ServerMock server = BenchmarkServer.start();
+        Player[] players = new Player[entities];
+        for (int i = 0; i < entities; i++) {
+            players[i] = server.addPlayer();
+        }
+        for (int i = 0; i < activeEffects; i++) {
+            //spread the first runs over the check interval like effects applied at different times
+            CustomPotionEffect effect = new CustomPotionEffect(BenchmarkServer.cachedType, null, null, Integer.MAX_VALUE, 0, checkInterval, i % checkInterval);
+            effect.apply(players[i % entities]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkServer.stop();
+    }
+
+    @Benchmark
+    public long tick() {
+        CustomPotionAPI.getTickEngine().run();
+        return BenchmarkServer.cachedType.effectCalls;
+    }
+}
@@ -0,0 +1,76 @@
+package com.sheepion.custompotionapi.benchmarks;
+
+import com.sheepion.custompotionapi.CustomPotionEffect;
+import com.sheepion.custompotionapi.CustomPotionEffectProperty;
+import com.sheepion.custompotionapi.CustomPotionManager;
+import com.sheepion.custompotionapi.PotionDecodeCache;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures decoding a custom potion item and building one.<br>
+ * decode() hits the decode cache, decodeCold() cycles through more distinct items than the cache holds,
+ * so every call parses the persistent data container.
+ *
+ * @author Sheepion
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PotionItemBenchmark {
+    /**
+     * more distinct items than the decode cache holds, cycling through them in order always misses the LRU cache
+     */
+    private static final int COLD_ITEMS = PotionDecodeCache.DEFAULT_MAX_SIZE * 2;
+
+    private CustomPotionEffectProperty property;
+    private ItemStack potion;
+    private ItemStack[] coldPotions;
+    private int nextColdPotion;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkServer.start();
+        property = new CustomPotionEffectProperty(null, 200, 1, 20, 0);
+        potion = CustomPotionManager.getPotion(Material.POTION, BenchmarkServer.cachedType.getKey(), property);
+        coldPotions = new ItemStack[COLD_ITEMS];
+        for (int i = 0; i < COLD_ITEMS; i++) {
+            //a distinct duration gives every item its own decode cache entry
+            coldPotions[i] = CustomPotionManager.getPotion(Material.POTION, BenchmarkServer.cachedType.getKey(),
+                    new CustomPotionEffectProperty(null, 200 + i, 1, 20, 0));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkServer.stop();
+    }
+
+    @Benchmark
+    public CustomPotionEffect decode() {
+        return CustomPotionManager.getCustomPotionEffect(potion);
+    }
+
+    @Benchmark
+    public CustomPotionEffect decodeCold() {
+        ItemStack item = coldPotions[nextColdPotion];
+        nextColdPotion = (nextColdPotion + 1) % COLD_ITEMS;
+        return CustomPotionManager.getCustomPotionEffect(item);
+    }
+
+    @Benchmark
+    public ItemStack buildCached() {
+        return CustomPotionManager.getPotion(Material.POTION, BenchmarkServer.cachedType.getKey(), property);
+    }
+
+    @Benchmark
+    public ItemStack buildUncached() {
+        return CustomPotionManager.getPotion(Material.POTION, BenchmarkServer.uncachedType.getKey(), property);
+    }
+}
@@ -0,0 +1,299 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * publishes immutable, versioned snapshots of all the active effects, for dashboards and other readers on other threads.<br>
+ * while the exporter is running, it follows the effects through the EffectLifecycleBus and marks them dirty,
+ * and every tick the dirty effects are published as a new version with a diff of what was added, changed and removed.
+ * readers can follow the diffs with diffSince(long), and only take a full snapshot with getSnapshot() when they start
+ * or fall behind the kept history.<br>
+ * a stopped exporter costs nothing. the effects are only read on the publishing thread,
+ * changes made to a property by other plugins are published with the effect's next run.
+ *
+ * @author Sheepion
+ */
+public class ActiveEffectExporter {
+    /**
+     * the number of diffs that are kept
+     */
+    public static final int HISTORY_SIZE = 1200;
+
+    /**
+     * the started exporters, so they can be stopped on disable without initializing CustomPotionManager
+     */
+    private static final Set<ActiveEffectExporter> started = ConcurrentHashMap.newKeySet();
+
+    private static final Object ADDED = new Object();
+    private static final Object CHANGED = new Object();
+    private static final Object REMOVED = new Object();
+
+    private final ConcurrentHashMap<CustomPotionEffect, Object> dirty = new ConcurrentHashMap<>();
+    private final IdentityHashMap<CustomPotionEffect, EffectState> current = new IdentityHashMap<>();
+    private final ArrayDeque<Diff> history = new ArrayDeque<>();
+    private final EffectLifecycleBus.Listener added = effect -> mark(effect, ADDED);
+    private final EffectLifecycleBus.Listener changed = effect -> mark(effect, CHANGED);
+    private final EffectLifecycleBus.Listener removed = effect -> mark(effect, REMOVED);
+
+    private volatile boolean running;
+    private volatile long version;
+    private Snapshot snapshot = new Snapshot(0, Map.of());
+    private EffectScheduler.Task publishTask;
+
+    /**
+     * start following the effects and publish a new version every tick.<br>
+     * the effects that are already active are published in the first version.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        started.add(this);
+        EffectLifecycleBus.subscribe(EffectLifecycleBus.Phase.APPLY, added);
+        EffectLifecycleBus.subscribe(EffectLifecycleBus.Phase.RESUME, added);
+        EffectLifecycleBus.subscribe(EffectLifecycleBus.Phase.TICK, changed);
+        EffectLifecycleBus.subscribe(EffectLifecycleBus.Phase.EXPIRE, removed);
+        EffectLifecycleBus.subscribe(EffectLifecycleBus.Phase.CANCEL, removed);
+        EffectLifecycleBus.subscribe(EffectLifecycleBus.Phase.PAUSE, removed);
+        ActiveEffectStore store = CustomPotionManager.getActiveEffectStore();
+        for (UUID uuid : store.getEntities()) {
+            for (CustomPotionEffect effect : store.getEffects(uuid)) {
+                mark(effect, ADDED);
+            }
+        }
+        publishTask = CustomPotionAPI.getEffectScheduler().runTimer(this::publish, 1L, 1L);
+    }
+
+    /**
+     * stop following the effects, the published versions are dropped
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        started.remove(this);
+        publishTask.cancel();
+        publishTask = null;
+        EffectLifecycleBus.unsubscribe(EffectLifecycleBus.Phase.APPLY, added);
+        EffectLifecycleBus.unsubscribe(EffectLifecycleBus.Phase.RESUME, added);
+        EffectLifecycleBus.unsubscribe(EffectLifecycleBus.Phase.TICK, changed);
+        EffectLifecycleBus.unsubscribe(EffectLifecycleBus.Phase.EXPIRE, removed);
+        EffectLifecycleBus.unsubscribe(EffectLifecycleBus.Phase.CANCEL, removed);
+        EffectLifecycleBus.unsubscribe(EffectLifecycleBus.Phase.PAUSE, removed);
+        dirty.clear();
+        current.clear();
+        history.clear();
+        snapshot = new Snapshot(version, Map.of());
+    }
+
+    /**
+     * stop all the started exporters, called when the plugin is disabled
+     */
+    static void stopAll() {
+        for (ActiveEffectExporter exporter : started) {
+            exporter.stop();
+        }
+    }
+
+    /**
+     * @return true if the exporter is following the effects
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * mark the effect as changed outside of its runs, for example when an effect is stacked onto it
+     *
+     * @param effect the effect
+     */
+    void markChanged(@NotNull CustomPotionEffect effect) {
+        if (running) {
+            mark(effect, CHANGED);
+        }
+    }
+
+    private void mark(CustomPotionEffect effect, Object change) {
+        if (change == CHANGED) {
+            //keep ADDED, an effect that is added and changed in one tick is just added
+            dirty.putIfAbsent(effect, CHANGED);
+        } else {
+            dirty.put(effect, change);
+        }
+    }
+
+    /**
+     * publish the dirty effects as a new version now, instead of waiting for the next tick.<br>
+     * call it from the thread that ticks the effects.
+     *
+     * @return the published version, the current version if nothing changed
+     */
+    public synchronized long publish() {
+        if (!running || dirty.isEmpty()) {
+            return version;
+        }
+        ArrayList<EffectState> addedStates = new ArrayList<>();
+        ArrayList<EffectState> changedStates = new ArrayList<>();
+        ArrayList<EffectState> removedStates = new ArrayList<>();
+        for (Map.Entry<CustomPotionEffect, Object> entry : dirty.entrySet()) {
+            CustomPotionEffect effect = entry.getKey();
+            if (!dirty.remove(effect, entry.getValue())) {
+                //marked again meanwhile, it is published with the next version
+                continue;
+            }
+            if (entry.getValue() == REMOVED) {
+                EffectState state = current.remove(effect);
+                if (state != null) {
+                    removedStates.add(state);
+                }
+                continue;
+            }
+            if (effect.getHandle() == ActiveEffectStore.NO_HANDLE) {
+                //removed before the removal was marked
+                continue;
+            }
+            EffectState state = EffectState.of(effect);
+            EffectState previous = current.put(effect, state);
+            if (previous == null) {
+                addedStates.add(state);
+            } else if (!previous.equals(state)) {
+                changedStates.add(state);
+            }
+        }
+        if (addedStates.isEmpty() && changedStates.isEmpty() && removedStates.isEmpty()) {
+            return version;
+        }
+        long published = version + 1;
+        history.addLast(new Diff(version, published, List.copyOf(addedStates), List.copyOf(changedStates), List.copyOf(removedStates)));
+        if (history.size() > HISTORY_SIZE) {
+            history.removeFirst();
+        }
+        version = published;
+        return published;
+    }
+
+    /**
+     * @return the latest published version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the snapshot of the latest published version
+     */
+    public synchronized @NotNull Snapshot getSnapshot() {
+        if (snapshot.version() != version) {
+            HashMap<UUID, List<EffectState>> byEntity = new HashMap<>();
+            for (EffectState state : current.values()) {
+                byEntity.computeIfAbsent(state.entity(), key -> new ArrayList<>(1)).add(state);
+            }
+            byEntity.replaceAll((uuid, states) -> List.copyOf(states));
+            snapshot = new Snapshot(version, Collections.unmodifiableMap(byEntity));
+        }
+        return snapshot;
+    }
+
+    /**
+     * get everything that was added, changed and removed after the version, merged into one diff
+     *
+     * @param since the version the reader has
+     * @return the diff up to the latest version, null if the version is older than the kept history,
+     * take a full snapshot then
+     */
+    public synchronized @Nullable Diff diffSince(long since) {
+        if (since == version) {
+            return new Diff(since, since, List.of(), List.of(), List.of());
+        }
+        if (since > version || history.isEmpty() || since < history.peekFirst().fromVersion()) {
+            return null;
+        }
+        LinkedHashMap<Integer, EffectState> addedStates = new LinkedHashMap<>();
+        LinkedHashMap<Integer, EffectState> changedStates = new LinkedHashMap<>();
+        LinkedHashMap<Integer, EffectState> removedStates = new LinkedHashMap<>();
+        for (Diff diff : history) {
+            if (diff.toVersion() <= since) {
+                continue;
+            }
+            for (EffectState state : diff.added()) {
+                addedStates.put(state.handle(), state);
+            }
+            for (EffectState state : diff.changed()) {
+                if (addedStates.containsKey(state.handle())) {
+                    addedStates.put(state.handle(), state);
+                } else {
+                    changedStates.put(state.handle(), state);
+                }
+            }
+            for (EffectState state : diff.removed()) {
+                //an effect that was added and removed in the range was never seen by the reader
+                if (addedStates.remove(state.handle()) == null) {
+                    changedStates.remove(state.handle());
+                    removedStates.put(state.handle(), state);
+                }
+            }
+        }
+        return new Diff(since, version, List.copyOf(addedStates.values()), List.copyOf(changedStates.values()),
+                List.copyOf(removedStates.values()));
+    }
+
+    /**
+     * the state of one active effect
+     *
+     * @param handle        the effect handle, see CustomPotionEffect#getHandle()
+     * @param entity        the entity uuid
+     * @param type          the effect type key
+     * @param duration      the effect's duration
+     * @param restDuration  the effect's rest duration
+     * @param amplifier     the effect's amplifier
+     * @param ambient       the effect's ambient
+     * @param checkInterval the effect's check interval
+     */
+    public record EffectState(int handle, @NotNull UUID entity, @NotNull NamespacedKey type, int duration,
+                              int restDuration, int amplifier, boolean ambient, int checkInterval) {
+        static EffectState of(CustomPotionEffect effect) {
+            CustomPotionEffectProperty property = effect.getProperty();
+            return new EffectState(effect.getHandle(), effect.getEntity().getUniqueId(), effect.getEffectType().getKey(),
+                    property.getDuration(), property.getRestDuration(), property.getAmplifier(), property.isAmbient(),
+                    property.getCheckInterval());
+        }
+    }
+
+    /**
+     * all the active effects at one version
+     *
+     * @param version  the version
+     * @param byEntity the unmodifiable effect states by entity uuid
+     */
+    public record Snapshot(long version, @NotNull Map<UUID, List<EffectState>> byEntity) {
+    }
+
+    /**
+     * the effects that were added, changed and removed between two versions
+     *
+     * @param fromVersion the version the diff starts from
+     * @param toVersion   the version the diff leads to
+     * @param added       the effects that were added
+     * @param changed     the effects that were changed, with their new state
+     * @param removed     the effects that were removed, with their last published state
+     */
+    public record Diff(long fromVersion, long toVersion, @NotNull List<EffectState> added,
+                       @NotNull List<EffectState> changed, @NotNull List<EffectState> removed) {
+    }
+}
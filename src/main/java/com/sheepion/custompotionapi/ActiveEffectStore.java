@@ -0,0 +1,351 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * stores all the custom potion effects that are applied to entities.<br>
+ * effects are indexed by entity and by effect type, so adding, removing and per-type queries are O(1).
+ * an entity's entry is removed as soon as its last effect is removed.<br>
+ * every stored effect gets an int handle that can be looked up without allocating.
+ * the query methods hasEffect, countEffects, forEachEffect and getEffect(int) never allocate,
+ * so they can be called from CustomPotionEffectType#effect(...) every tick.<br>
+ * the store is only changed on the main thread, but it can be read safely from any thread.
+ *
+ * @author Sheepion
+ */
+public class ActiveEffectStore {
+    /**
+     * the handle of an effect that is not stored
+     */
+    public static final int NO_HANDLE = -1;
+
+    private static final int SLOT_BITS = 24;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final CustomPotionEffect[] NO_EFFECTS = new CustomPotionEffect[0];
+
+    private final ConcurrentHashMap<UUID, EntityEffects> byEntity = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<NamespacedKey, Set<CustomPotionEffect>> byType = new ConcurrentHashMap<>();
+
+    /**
+     * the effects by the slot of their handle, the upper bits of a handle are the slot's generation,
+     * so a handle of a removed effect does not find the effect that reuses its slot
+     */
+    private volatile CustomPotionEffect[] handles = new CustomPotionEffect[64];
+    private byte[] generations = new byte[64];
+    private int[] freeSlots = new int[64];
+    private int freeSlotCount;
+    private int nextSlot;
+
+    /**
+     * add an effect that is applied to the entity
+     *
+     * @param uuid   the entity uuid
+     * @param effect the effect
+     */
+    public void add(@NotNull UUID uuid, @NotNull CustomPotionEffect effect) {
+        NamespacedKey type = effect.getEffectType().getKey();
+        assignHandle(effect);
+        byEntity.compute(uuid, (key, effects) -> {
+            if (effects == null) {
+                effects = new EntityEffects();
+            }
+            effects.add(type, effect);
+            return effects;
+        });
+        byType.computeIfAbsent(type, key -> ConcurrentHashMap.newKeySet()).add(effect);
+    }
+
+    /**
+     * add effects that are applied to their entities in one go,
+     * the effects are grouped by entity so every entity's entry is only updated once.
+     *
+     * @param effects the effects, every effect must have its entity set
+     */
+    public void addAll(@NotNull List<CustomPotionEffect> effects) {
+        if (effects.isEmpty()) {
+            return;
+        }
+        HashMap<UUID, ArrayList<CustomPotionEffect>> byUuid = new HashMap<>();
+        HashMap<NamespacedKey, ArrayList<CustomPotionEffect>> ofTypes = new HashMap<>();
+        for (CustomPotionEffect effect : effects) {
+            assignHandle(effect);
+            byUuid.computeIfAbsent(effect.getEntity().getUniqueId(), key -> new ArrayList<>(1)).add(effect);
+            ofTypes.computeIfAbsent(effect.getEffectType().getKey(), key -> new ArrayList<>(effects.size())).add(effect);
+        }
+        byUuid.forEach((uuid, entityEffects) -> byEntity.compute(uuid, (key, stored) -> {
+            if (stored == null) {
+                stored = new EntityEffects();
+            }
+            for (CustomPotionEffect effect : entityEffects) {
+                stored.add(effect.getEffectType().getKey(), effect);
+            }
+            return stored;
+        }));
+        ofTypes.forEach((type, typeEffects) -> byType.computeIfAbsent(type, key -> ConcurrentHashMap.newKeySet()).addAll(typeEffects));
+    }
+
+    /**
+     * remove an effect from the entity
+     *
+     * @param uuid   the entity uuid
+     * @param effect the effect
+     * @return true if the effect was in the store
+     */
+    public boolean remove(@NotNull UUID uuid, @NotNull CustomPotionEffect effect) {
+        NamespacedKey type = effect.getEffectType().getKey();
+        boolean[] removed = new boolean[1];
+        byEntity.computeIfPresent(uuid, (key, effects) -> {
+            removed[0] = effects.remove(type, effect);
+            return effects.isEmpty() ? null : effects;
+        });
+        if (removed[0]) {
+            removeFromType(type, effect);
+            releaseHandle(effect);
+        }
+        return removed[0];
+    }
+
+    /**
+     * remove all the effects of the entity
+     *
+     * @param uuid the entity uuid
+     * @return the removed effects
+     */
+    public @NotNull ArrayList<CustomPotionEffect> removeAll(@NotNull UUID uuid) {
+        ArrayList<CustomPotionEffect> removed = new ArrayList<>();
+        EntityEffects effects = byEntity.remove(uuid);
+        if (effects == null) {
+            return removed;
+        }
+        effects.collect(removed);
+        for (CustomPotionEffect effect : removed) {
+            removeFromType(effect.getEffectType().getKey(), effect);
+            releaseHandle(effect);
+        }
+        return removed;
+    }
+
+    private void removeFromType(NamespacedKey type, CustomPotionEffect effect) {
+        byType.computeIfPresent(type, (key, effects) -> {
+            effects.remove(effect);
+            return effects.isEmpty() ? null : effects;
+        });
+    }
+
+    private synchronized void assignHandle(CustomPotionEffect effect) {
+        int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            slot = nextSlot++;
+            if (slot > SLOT_MASK) {
+                throw new IllegalStateException("too many active custom potion effects");
+            }
+            if (slot == handles.length) {
+                handles = Arrays.copyOf(handles, slot * 2);
+                generations = Arrays.copyOf(generations, slot * 2);
+            }
+        }
+        effect.handle = ((generations[slot] & 0x7F) << SLOT_BITS) | slot;
+        handles[slot] = effect;
+    }
+
+    private synchronized void releaseHandle(CustomPotionEffect effect) {
+        int handle = effect.handle;
+        if (handle == NO_HANDLE) {
+            return;
+        }
+        int slot = handle & SLOT_MASK;
+        handles[slot] = null;
+        generations[slot]++;
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+        effect.handle = NO_HANDLE;
+    }
+
+    /**
+     * get the stored effect by its handle, see CustomPotionEffect#getHandle().<br>
+     * this never allocates.
+     *
+     * @param handle the effect handle
+     * @return the effect, null if the effect is not stored anymore
+     */
+    public @Nullable CustomPotionEffect getEffect(int handle) {
+        if (handle < 0) {
+            return null;
+        }
+        CustomPotionEffect[] handles = this.handles;
+        int slot = handle & SLOT_MASK;
+        if (slot >= handles.length) {
+            return null;
+        }
+        CustomPotionEffect effect = handles[slot];
+        return effect != null && effect.handle == handle ? effect : null;
+    }
+
+    /**
+     * this never allocates.
+     *
+     * @param uuid the entity uuid
+     * @param type the effect type key
+     * @return true if the entity has an effect with the type
+     */
+    public boolean hasEffect(@NotNull UUID uuid, @NotNull NamespacedKey type) {
+        return ofType(uuid, type).length > 0;
+    }
+
+    /**
+     * this never allocates.
+     *
+     * @param uuid the entity uuid
+     * @param type the effect type key
+     * @return the number of effects with the type on the entity
+     */
+    public int countEffects(@NotNull UUID uuid, @NotNull NamespacedKey type) {
+        return ofType(uuid, type).length;
+    }
+
+    /**
+     * this never allocates.
+     *
+     * @param uuid the entity uuid
+     * @param type the effect type key
+     * @return the earliest applied effect with the type on the entity, null if there is none
+     */
+    public @Nullable CustomPotionEffect getFirstEffect(@NotNull UUID uuid, @NotNull NamespacedKey type) {
+        CustomPotionEffect[] effects = ofType(uuid, type);
+        return effects.length == 0 ? null : effects[0];
+    }
+
+    /**
+     * call the action for every effect with the type on the entity.<br>
+     * this never allocates, the action may cancel effects.
+     *
+     * @param uuid   the entity uuid
+     * @param type   the effect type key
+     * @param action the action
+     */
+    public void forEachEffect(@NotNull UUID uuid, @NotNull NamespacedKey type, @NotNull Consumer<? super CustomPotionEffect> action) {
+        for (CustomPotionEffect effect : ofType(uuid, type)) {
+            action.accept(effect);
+        }
+    }
+
+    private CustomPotionEffect[] ofType(UUID uuid, NamespacedKey type) {
+        EntityEffects effects = byEntity.get(uuid);
+        if (effects == null) {
+            return NO_EFFECTS;
+        }
+        CustomPotionEffect[] ofType = effects.byType.get(type);
+        return ofType == null ? NO_EFFECTS : ofType;
+    }
+
+    /**
+     * @param uuid the entity uuid
+     * @return a copy of all the effects on the entity, empty if there is none
+     */
+    public @NotNull ArrayList<CustomPotionEffect> getEffects(@NotNull UUID uuid) {
+        ArrayList<CustomPotionEffect> result = new ArrayList<>();
+        EntityEffects effects = byEntity.get(uuid);
+        if (effects != null) {
+            effects.collect(result);
+        }
+        return result;
+    }
+
+    /**
+     * @param uuid the entity uuid
+     * @param type the effect type key
+     * @return a copy of the effects with the type on the entity, empty if there is none
+     */
+    public @NotNull ArrayList<CustomPotionEffect> getEffects(@NotNull UUID uuid, @NotNull NamespacedKey type) {
+        return new ArrayList<>(Arrays.asList(ofType(uuid, type)));
+    }
+
+    /**
+     * @param type the effect type key
+     * @return an unmodifiable live view of all the applied effects with the type
+     */
+    public @NotNull Set<CustomPotionEffect> getEffectsOfType(@NotNull NamespacedKey type) {
+        Set<CustomPotionEffect> effects = byType.get(type);
+        return effects == null ? Collections.emptySet() : Collections.unmodifiableSet(effects);
+    }
+
+    /**
+     * @param uuid the entity uuid
+     * @return true if the entity has any effect
+     */
+    public boolean contains(@NotNull UUID uuid) {
+        return byEntity.containsKey(uuid);
+    }
+
+    /**
+     * @return an unmodifiable live view of the entities that have effects
+     */
+    public @NotNull Set<UUID> getEntities() {
+        return Collections.unmodifiableSet(byEntity.keySet());
+    }
+
+    /**
+     * the effects of one entity, indexed by type.<br>
+     * the effects of a type are kept in a copy-on-write array in the order they were applied,
+     * the stacking policy keeps the arrays short.
+     */
+    private static final class EntityEffects {
+        private final ConcurrentHashMap<NamespacedKey, CustomPotionEffect[]> byType = new ConcurrentHashMap<>();
+
+        void add(NamespacedKey type, CustomPotionEffect effect) {
+            byType.merge(type, new CustomPotionEffect[]{effect}, (effects, added) -> {
+                CustomPotionEffect[] result = Arrays.copyOf(effects, effects.length + 1);
+                result[effects.length] = effect;
+                return result;
+            });
+        }
+
+        boolean remove(NamespacedKey type, CustomPotionEffect effect) {
+            CustomPotionEffect[] effects = byType.get(type);
+            if (effects == null) {
+                return false;
+            }
+            for (int i = 0; i < effects.length; i++) {
+                if (effects[i] != effect) {
+                    continue;
+                }
+                if (effects.length == 1) {
+                    byType.remove(type);
+                    return true;
+                }
+                CustomPotionEffect[] result = new CustomPotionEffect[effects.length - 1];
+                System.arraycopy(effects, 0, result, 0, i);
+                System.arraycopy(effects, i + 1, result, i, effects.length - i - 1);
+                byType.put(type, result);
+                return true;
+            }
+            return false;
+        }
+
+        boolean isEmpty() {
+            return byType.isEmpty();
+        }
+
+        void collect(ArrayList<CustomPotionEffect> result) {
+            for (CustomPotionEffect[] effects : byType.values()) {
+                Collections.addAll(result, effects);
+            }
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.entity.AreaEffectCloud;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * keeps track of the area effect clouds that carry custom potion effects.<br>
+ * one cloud can carry many effects, for example all the effects of one type on an exploding creeper.<br>
+ * clouds are keyed by their uuid, no entity reference is kept,
+ * and a cloud is untracked when it is removed from the world.<br>
+ * the clouds are also indexed by world and by the chunk of their center,
+ * so cloudsNear(Location, double) and cloudsInChunk(World, int, int) only look at the chunks in range.
+ * clouds that can grow larger than INDEXED_RADIUS are kept in a separate list of the world that is always checked,
+ * so one large cloud does not widen the chunk search of all the others.
+ * the radius of a cloud is estimated from its radius per tick, and corrected whenever the cloud is used.<br>
+ * the tracker can be read safely from any thread.
+ *
+ * @author Sheepion
+ */
+public class AreaEffectCloudTracker {
+    /**
+     * the max number of effects one cloud carries, effects merged into a full cloud are dropped
+     */
+    public static final int MAX_CLOUD_EFFECTS = 16;
+
+    /**
+     * the largest radius of a cloud that is indexed by its chunk, the chunk search is widened by it
+     */
+    public static final double INDEXED_RADIUS = 16;
+
+    private final ConcurrentHashMap<UUID, TrackedCloud> clouds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, WorldIndex> worlds = new ConcurrentHashMap<>();
+
+    /**
+     * start tracking the cloud, replacing the effect it carried before
+     *
+     * @param cloud  the area effect cloud
+     * @param effect the custom potion effect the cloud applies
+     * @return the tracked cloud
+     */
+    public @NotNull TrackedCloud track(@NotNull AreaEffectCloud cloud, @NotNull CustomPotionEffect effect) {
+        return track(cloud, List.of(effect));
+    }
+
+    /**
+     * start tracking the cloud, replacing the effects it carried before.<br>
+     * effects with the same type, amplifier, check interval and delay are folded into the longest one,
+     * and at most MAX_CLOUD_EFFECTS effects are kept.
+     *
+     * @param cloud   the area effect cloud
+     * @param effects the custom potion effects the cloud applies, must not be empty
+     * @return the tracked cloud
+     */
+    public @NotNull TrackedCloud track(@NotNull AreaEffectCloud cloud, @NotNull List<CustomPotionEffect> effects) {
+        if (effects.isEmpty()) {
+            throw new IllegalArgumentException("a tracked cloud needs at least one effect");
+        }
+        TrackedCloud trackedCloud = new TrackedCloud(cloud.getUniqueId(), fold(new CustomPotionEffect[0], effects), cloud.getLocation());
+        trackedCloud.setRadius(cloud.getRadius(), cloud.getRadiusPerTick());
+        TrackedCloud previous = clouds.put(trackedCloud.getUniqueId(), trackedCloud);
+        if (previous != null) {
+            unindex(previous);
+        }
+        worlds.computeIfAbsent(trackedCloud.getWorldUID(), key -> new WorldIndex()).add(trackedCloud, maxRadius(cloud));
+        return trackedCloud;
+    }
+
+    /**
+     * correct the radius of the tracked cloud, do nothing if the cloud is not tracked
+     *
+     * @param cloud  the area effect cloud
+     * @param radius the current radius of the cloud
+     */
+    public void updateRadius(@NotNull AreaEffectCloud cloud, float radius) {
+        TrackedCloud trackedCloud = clouds.get(cloud.getUniqueId());
+        if (trackedCloud == null) {
+            return;
+        }
+        trackedCloud.setRadius(radius, cloud.getRadiusPerTick());
+        WorldIndex index = worlds.get(trackedCloud.getWorldUID());
+        if (index != null) {
+            index.grow(trackedCloud, maxRadius(radius, cloud));
+        }
+    }
+
+    /**
+     * stop tracking the cloud
+     *
+     * @param uuid the cloud uuid
+     * @return the cloud that was tracked, null if the cloud was not tracked
+     */
+    public @Nullable TrackedCloud untrack(@NotNull UUID uuid) {
+        TrackedCloud trackedCloud = clouds.remove(uuid);
+        if (trackedCloud != null) {
+            unindex(trackedCloud);
+        }
+        return trackedCloud;
+    }
+
+    private void unindex(TrackedCloud trackedCloud) {
+        worlds.computeIfPresent(trackedCloud.getWorldUID(), (key, index) -> {
+            index.remove(trackedCloud);
+            return index.isEmpty() ? null : index;
+        });
+    }
+
+    /**
+     * add the effects to the array, folding each effect into an effect with the same type, amplifier, check interval and delay.
+     * the folded entry keeps the effect with the longer duration.
+     *
+     * @param effects the current effects, not changed
+     * @param added   the effects to add
+     * @return the new effects, at most MAX_CLOUD_EFFECTS
+     */
+    private static CustomPotionEffect[] fold(CustomPotionEffect[] effects, List<CustomPotionEffect> added) {
+        ArrayList<CustomPotionEffect> result = new ArrayList<>(Arrays.asList(effects));
+        outer:
+        for (CustomPotionEffect effect : added) {
+            CustomPotionEffectProperty property = effect.getProperty();
+            for (int i = 0; i < result.size(); i++) {
+                CustomPotionEffect existing = result.get(i);
+                CustomPotionEffectProperty existingProperty = existing.getProperty();
+                if (existing.getEffectType().getKey().equals(effect.getEffectType().getKey())
+                        && existingProperty.getAmplifier() == property.getAmplifier()
+                        && existingProperty.getCheckInterval() == property.getCheckInterval()
+                        && existingProperty.getDelay() == property.getDelay()) {
+                    if (property.getDuration() > existingProperty.getDuration()) {
+                        result.set(i, effect);
+                    }
+                    continue outer;
+                }
+            }
+            if (result.size() < MAX_CLOUD_EFFECTS) {
+                result.add(effect);
+            }
+        }
+        return result.toArray(new CustomPotionEffect[0]);
+    }
+
+    /**
+     * the largest radius the cloud can reach before it disappears
+     */
+    private static double maxRadius(AreaEffectCloud cloud) {
+        return maxRadius(cloud.getRadius(), cloud);
+    }
+
+    private static double maxRadius(double radius, AreaEffectCloud cloud) {
+        if (cloud.getRadiusPerTick() > 0) {
+            int lifetime = Math.max(0, cloud.getDuration() + cloud.getWaitTime() - cloud.getTicksLived());
+            radius += cloud.getRadiusPerTick() * lifetime;
+        }
+        return radius;
+    }
+
+    /**
+     * @param uuid the cloud uuid
+     * @return the tracked cloud, null if the cloud is not tracked
+     */
+    public @Nullable TrackedCloud get(@NotNull UUID uuid) {
+        return clouds.get(uuid);
+    }
+
+    /**
+     * @param uuid the cloud uuid
+     * @return the first effect the cloud applies, null if the cloud is not tracked
+     */
+    public @Nullable CustomPotionEffect getEffect(@NotNull UUID uuid) {
+        TrackedCloud trackedCloud = clouds.get(uuid);
+        return trackedCloud == null ? null : trackedCloud.getEffect();
+    }
+
+    /**
+     * @param uuid the cloud uuid
+     * @return the effects the cloud applies, empty if the cloud is not tracked
+     */
+    public @NotNull List<CustomPotionEffect> getEffects(@NotNull UUID uuid) {
+        TrackedCloud trackedCloud = clouds.get(uuid);
+        return trackedCloud == null ? List.of() : trackedCloud.getEffects();
+    }
+
+    /**
+     * find a tracked cloud that new effects of the type at the location can be merged into
+     *
+     * @param location    the location of the new cloud
+     * @param type        the effect type key
+     * @param maxDistance the max distance between the cloud centers
+     * @return the nearest cloud whose effects have the type, null if there is none
+     */
+    public @Nullable TrackedCloud findMergeTarget(@NotNull Location location, @NotNull NamespacedKey type, double maxDistance) {
+        TrackedCloud nearest = null;
+        double nearestDistance = maxDistance * maxDistance;
+        for (TrackedCloud trackedCloud : cloudsNear(location, maxDistance)) {
+            if (!trackedCloud.getEffect().getEffectType().getKey().equals(type)) {
+                continue;
+            }
+            double dx = trackedCloud.x - location.getX();
+            double dy = trackedCloud.y - location.getY();
+            double dz = trackedCloud.z - location.getZ();
+            double distance = dx * dx + dy * dy + dz * dz;
+            if (distance <= nearestDistance) {
+                nearest = trackedCloud;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * get the tracked clouds whose area overlaps the sphere's circle on the xz plane.
+     *
+     * @param location the center, it must have a world
+     * @param radius   the radius in blocks, 0 to find the clouds that cover the location
+     * @return the clouds, empty if there is none
+     */
+    public @NotNull List<TrackedCloud> cloudsNear(@NotNull Location location, double radius) {
+        ArrayList<TrackedCloud> result = new ArrayList<>();
+        WorldIndex index = worlds.get(location.getWorld().getUID());
+        if (index == null) {
+            return result;
+        }
+        double x = location.getX();
+        double z = location.getZ();
+        double reach = radius + INDEXED_RADIUS;
+        int minChunkX = (int) Math.floor(x - reach) >> 4;
+        int maxChunkX = (int) Math.floor(x + reach) >> 4;
+        int minChunkZ = (int) Math.floor(z - reach) >> 4;
+        int maxChunkZ = (int) Math.floor(z + reach) >> 4;
+        int currentTick = Bukkit.getCurrentTick();
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                Set<TrackedCloud> chunk = index.chunks.get(Chunk.getChunkKey(chunkX, chunkZ));
+                if (chunk == null) {
+                    continue;
+                }
+                for (TrackedCloud trackedCloud : chunk) {
+                    if (!trackedCloud.oversized && isNear(trackedCloud, x, z, radius, currentTick)) {
+                        result.add(trackedCloud);
+                    }
+                }
+            }
+        }
+        for (TrackedCloud trackedCloud : index.oversized) {
+            if (isNear(trackedCloud, x, z, radius, currentTick)) {
+                result.add(trackedCloud);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isNear(TrackedCloud trackedCloud, double x, double z, double radius, int currentTick) {
+        double dx = trackedCloud.x - x;
+        double dz = trackedCloud.z - z;
+        double distance = radius + trackedCloud.getRadius(currentTick);
+        return dx * dx + dz * dz <= distance * distance;
+    }
+
+    /**
+     * get the tracked clouds whose area overlaps the chunk
+     *
+     * @param world  the world
+     * @param chunkX the chunk x
+     * @param chunkZ the chunk z
+     * @return the clouds, empty if there is none
+     */
+    public @NotNull List<TrackedCloud> cloudsInChunk(@NotNull World world, int chunkX, int chunkZ) {
+        ArrayList<TrackedCloud> result = new ArrayList<>();
+        WorldIndex index = worlds.get(world.getUID());
+        if (index == null) {
+            return result;
+        }
+        double minX = chunkX << 4;
+        double minZ = chunkZ << 4;
+        int reach = (int) Math.ceil(INDEXED_RADIUS) + 15 >> 4;
+        int currentTick = Bukkit.getCurrentTick();
+        for (int x = chunkX - reach; x <= chunkX + reach; x++) {
+            for (int z = chunkZ - reach; z <= chunkZ + reach; z++) {
+                Set<TrackedCloud> chunk = index.chunks.get(Chunk.getChunkKey(x, z));
+                if (chunk == null) {
+                    continue;
+                }
+                for (TrackedCloud trackedCloud : chunk) {
+                    if (!trackedCloud.oversized && overlaps(trackedCloud, minX, minZ, currentTick)) {
+                        result.add(trackedCloud);
+                    }
+                }
+            }
+        }
+        for (TrackedCloud trackedCloud : index.oversized) {
+            if (overlaps(trackedCloud, minX, minZ, currentTick)) {
+                result.add(trackedCloud);
+            }
+        }
+        return result;
+    }
+
+    private static boolean overlaps(TrackedCloud trackedCloud, double minX, double minZ, int currentTick) {
+        //the distance from the cloud center to the nearest point of the chunk
+        double dx = trackedCloud.x - Math.max(minX, Math.min(trackedCloud.x, minX + 16));
+        double dz = trackedCloud.z - Math.max(minZ, Math.min(trackedCloud.z, minZ + 16));
+        double cloudRadius = trackedCloud.getRadius(currentTick);
+        return dx * dx + dz * dz <= cloudRadius * cloudRadius;
+    }
+
+    /**
+     * @param chunk the chunk
+     * @return the tracked clouds whose area overlaps the chunk
+     */
+    public @NotNull List<TrackedCloud> cloudsInChunk(@NotNull Chunk chunk) {
+        return cloudsInChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
+    /**
+     * @return an unmodifiable live view of all the tracked clouds
+     */
+    public @NotNull Collection<TrackedCloud> getClouds() {
+        return Collections.unmodifiableCollection(clouds.values());
+    }
+
+    /**
+     * @return the number of tracked clouds
+     */
+    public int size() {
+        return clouds.size();
+    }
+
+    /**
+     * the tracked clouds of one world, bucketed by the chunk key of their center,
+     * and the clouds that can grow larger than INDEXED_RADIUS
+     */
+    private static final class WorldIndex {
+        private final ConcurrentHashMap<Long, Set<TrackedCloud>> chunks = new ConcurrentHashMap<>();
+        private final Set<TrackedCloud> oversized = ConcurrentHashMap.newKeySet();
+
+        void add(TrackedCloud trackedCloud, double radius) {
+            if (radius > INDEXED_RADIUS) {
+                trackedCloud.oversized = true;
+                oversized.add(trackedCloud);
+                return;
+            }
+            chunks.computeIfAbsent(trackedCloud.getChunkKey(), key -> ConcurrentHashMap.newKeySet()).add(trackedCloud);
+        }
+
+        void remove(TrackedCloud trackedCloud) {
+            oversized.remove(trackedCloud);
+            chunks.computeIfPresent(trackedCloud.getChunkKey(), (key, chunk) -> {
+                chunk.remove(trackedCloud);
+                return chunk.isEmpty() ? null : chunk;
+            });
+        }
+
+        /**
+         * move the cloud to the oversized clouds if it can now grow larger than INDEXED_RADIUS
+         */
+        void grow(TrackedCloud trackedCloud, double radius) {
+            if (radius <= INDEXED_RADIUS || trackedCloud.oversized) {
+                return;
+            }
+            //readers skip flagged clouds in the chunks, so the cloud is never returned twice
+            trackedCloud.oversized = true;
+            oversized.add(trackedCloud);
+            chunks.computeIfPresent(trackedCloud.getChunkKey(), (key, chunk) -> {
+                chunk.remove(trackedCloud);
+                return chunk.isEmpty() ? null : chunk;
+            });
+        }
+
+        boolean isEmpty() {
+            return chunks.isEmpty() && oversized.isEmpty();
+        }
+    }
+
+    /**
+     * an area effect cloud that carries one or more custom potion effects
+     */
+    public static final class TrackedCloud {
+        private final UUID uuid;
+
+        /**
+         * copy-on-write, replaced when another cloud is merged into this one
+         */
+        private volatile CustomPotionEffect[] effects;
+        private final UUID worldUID;
+        private final double x;
+        private final double y;
+        private final double z;
+
+        /**
+         * the radius measured at radiusTick, it changes by radiusPerTick every tick after that
+         */
+        private volatile float radius;
+        private volatile float radiusPerTick;
+        private volatile int radiusTick;
+
+        /**
+         * true if the cloud is in the oversized clouds of its world instead of its chunk
+         */
+        private volatile boolean oversized;
+
+        TrackedCloud(UUID uuid, CustomPotionEffect[] effects, Location location) {
+            this.uuid = uuid;
+            this.effects = effects;
+            this.worldUID = location.getWorld().getUID();
+            this.x = location.getX();
+            this.y = location.getY();
+            this.z = location.getZ();
+        }
+
+        void setRadius(float radius, float radiusPerTick) {
+            this.radiusTick = Bukkit.getCurrentTick();
+            this.radiusPerTick = radiusPerTick;
+            this.radius = radius;
+        }
+
+        /**
+         * @return the uuid of the area effect cloud
+         */
+        public @NotNull UUID getUniqueId() {
+            return uuid;
+        }
+
+        /**
+         * @return the first effect the cloud applies
+         */
+        public @NotNull CustomPotionEffect getEffect() {
+            return effects[0];
+        }
+
+        /**
+         * @return an unmodifiable copy of the effects the cloud applies
+         */
+        public @NotNull List<CustomPotionEffect> getEffects() {
+            return List.of(effects);
+        }
+
+        /**
+         * add the effects of a merged cloud.<br>
+         * effects with the same type, amplifier, check interval and delay as a carried effect are folded into it,
+         * keeping the longer duration, so merging the same effects again does not grow the cloud.
+         * at most MAX_CLOUD_EFFECTS effects are kept.
+         *
+         * @param merged the effects
+         */
+        public synchronized void addEffects(@NotNull List<CustomPotionEffect> merged) {
+            effects = fold(effects, merged);
+        }
+
+        /**
+         * @return the uid of the cloud's world
+         */
+        public @NotNull UUID getWorldUID() {
+            return worldUID;
+        }
+
+        /**
+         * @return the x of the cloud center
+         */
+        public double getX() {
+            return x;
+        }
+
+        /**
+         * @return the y of the cloud center
+         */
+        public double getY() {
+            return y;
+        }
+
+        /**
+         * @return the z of the cloud center
+         */
+        public double getZ() {
+            return z;
+        }
+
+        /**
+         * @return the chunk key of the cloud center, see Chunk#getChunkKey(int, int)
+         */
+        public long getChunkKey() {
+            return Chunk.getChunkKey((int) Math.floor(x) >> 4, (int) Math.floor(z) >> 4);
+        }
+
+        /**
+         * @return the estimated radius of the cloud now
+         */
+        public double getRadius() {
+            return getRadius(Bukkit.getCurrentTick());
+        }
+
+        private double getRadius(int currentTick) {
+            return Math.max(0, radius + radiusPerTick * (currentTick - radiusTick));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.entity.LivingEntity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * a custom potion effect type that splits its effect into a pure compute step and a commit step.<br>
+ * compute(EffectSnapshot) runs on a worker thread of the EffectComputePool and must not touch the world,
+ * commit(LivingEntity, CustomPotionEffectProperty, Object) runs on the thread that ticks the effect and applies the result.<br>
+ * the result of the next run is computed in the background right after a commit,
+ * from a snapshot taken after that commit. if the result is not ready when the effect runs again,
+ * it is computed synchronously instead, so a run never waits for the pool.
+ *
+ * @param <R> the type of the computed result
+ * @author Sheepion
+ */
+public interface AsyncCustomPotionEffectType<R> extends CustomPotionEffectType {
+    /**
+     * compute the result of the next run, called from a worker thread, or from the ticking thread as a fallback.
+     *
+     * @param snapshot the effect and its entity
+     * @return the result
+     */
+    @Nullable R compute(@NotNull EffectSnapshot snapshot);
+
+    /**
+     * apply the computed result to the entity, called from the thread that ticks the effect.
+     *
+     * @param entity   the entity
+     * @param property the property of the effect
+     * @param result   the result of compute(EffectSnapshot)
+     */
+    void commit(@NotNull LivingEntity entity, @NotNull CustomPotionEffectProperty property, @Nullable R result);
+
+    /**
+     * only used when the type is not ticked by a CustomPotionEffect, computes and commits synchronously.
+     *
+     * @param entity   the entity to apply the potion effect
+     * @param property the property of the potion effect that applied to the entity
+     */
+    @Override
+    default void effect(LivingEntity entity, CustomPotionEffectProperty property) {
+        commit(entity, property, compute(EffectSnapshot.of(entity, this, property)));
+    }
+}
@@ -0,0 +1,189 @@
+package com.sheepion.custompotionapi;
+
+import io.papermc.paper.potion.PotionMix;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.RecipeChoice;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * all the potion mixes registered by the custom potion effect types, indexed by their ingredient.<br>
+ * answers "what does this brew into" by only testing the mixes whose ingredient can match,
+ * instead of scanning every mix. mixes whose ingredient is not a material or exact choice are always tested.<br>
+ * lookups never lock and are safe from any thread.
+ *
+ * @author Sheepion
+ */
+public class BrewingRecipeIndex {
+    private static final PotionMix[] NO_MIXES = new PotionMix[0];
+
+    private final ConcurrentHashMap<NamespacedKey, PotionMix> byKey = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Material, PotionMix[]> byIngredient = new ConcurrentHashMap<>();
+    private volatile PotionMix[] anyIngredient = NO_MIXES;
+
+    /**
+     * add the mix, replacing the mix with the same key
+     *
+     * @param mix the potion mix
+     * @return true if the index changed, false if the same mix was already indexed
+     */
+    public synchronized boolean add(@NotNull PotionMix mix) {
+        PotionMix previous = byKey.get(mix.getKey());
+        if (mix.equals(previous)) {
+            return false;
+        }
+        if (previous != null) {
+            remove(previous.getKey());
+        }
+        byKey.put(mix.getKey(), mix);
+        Set<Material> materials = ingredientMaterials(mix.getIngredient());
+        if (materials == null) {
+            anyIngredient = append(anyIngredient, mix);
+            return true;
+        }
+        for (Material material : materials) {
+            byIngredient.put(material, append(byIngredient.getOrDefault(material, NO_MIXES), mix));
+        }
+        return true;
+    }
+
+    /**
+     * remove the mix with the key
+     *
+     * @param key the namespaced key of the mix
+     * @return the removed mix, null if no mix has the key
+     */
+    public synchronized @Nullable PotionMix remove(@NotNull NamespacedKey key) {
+        PotionMix mix = byKey.remove(key);
+        if (mix == null) {
+            return null;
+        }
+        Set<Material> materials = ingredientMaterials(mix.getIngredient());
+        if (materials == null) {
+            anyIngredient = without(anyIngredient, mix);
+            return mix;
+        }
+        for (Material material : materials) {
+            PotionMix[] mixes = without(byIngredient.getOrDefault(material, NO_MIXES), mix);
+            if (mixes.length == 0) {
+                byIngredient.remove(material);
+            } else {
+                byIngredient.put(material, mixes);
+            }
+        }
+        return mix;
+    }
+
+    /**
+     * @param key the namespaced key of the mix
+     * @return the mix, null if no mix has the key
+     */
+    public @Nullable PotionMix getMix(@NotNull NamespacedKey key) {
+        return byKey.get(key);
+    }
+
+    /**
+     * find the mix that brews the input with the ingredient
+     *
+     * @param input      the item in the bottle slot
+     * @param ingredient the item in the ingredient slot
+     * @return the mix, null if no indexed mix matches
+     */
+    public @Nullable PotionMix findMix(@NotNull ItemStack input, @NotNull ItemStack ingredient) {
+        for (PotionMix mix : byIngredient.getOrDefault(ingredient.getType(), NO_MIXES)) {
+            if (mix.getIngredient().test(ingredient) && mix.getInput().test(input)) {
+                return mix;
+            }
+        }
+        for (PotionMix mix : anyIngredient) {
+            if (mix.getIngredient().test(ingredient) && mix.getInput().test(input)) {
+                return mix;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * get what the input brews into with the ingredient
+     *
+     * @param input      the item in the bottle slot
+     * @param ingredient the item in the ingredient slot
+     * @return a copy of the result, null if no indexed mix matches
+     */
+    public @Nullable ItemStack getResult(@NotNull ItemStack input, @NotNull ItemStack ingredient) {
+        PotionMix mix = findMix(input, ingredient);
+        return mix == null ? null : mix.getResult().clone();
+    }
+
+    /**
+     * @param ingredient the ingredient material
+     * @return the mixes that may use the ingredient
+     */
+    public @NotNull List<PotionMix> getMixesWithIngredient(@NotNull Material ingredient) {
+        ArrayList<PotionMix> result = new ArrayList<>(Arrays.asList(byIngredient.getOrDefault(ingredient, NO_MIXES)));
+        Collections.addAll(result, anyIngredient);
+        return result;
+    }
+
+    /**
+     * @return an unmodifiable live view of all the indexed mixes
+     */
+    public @NotNull Collection<PotionMix> getMixes() {
+        return Collections.unmodifiableCollection(byKey.values());
+    }
+
+    /**
+     * @return the number of indexed mixes
+     */
+    public int size() {
+        return byKey.size();
+    }
+
+    /**
+     * @param choice the ingredient choice
+     * @return the materials the choice can match, null if they can not be listed
+     */
+    private static @Nullable Set<Material> ingredientMaterials(RecipeChoice choice) {
+        if (choice instanceof RecipeChoice.MaterialChoice materialChoice) {
+            return new HashSet<>(materialChoice.getChoices());
+        }
+        if (choice instanceof RecipeChoice.ExactChoice exactChoice) {
+            HashSet<Material> materials = new HashSet<>();
+            for (ItemStack item : exactChoice.getChoices()) {
+                materials.add(item.getType());
+            }
+            return materials;
+        }
+        return null;
+    }
+
+    private static PotionMix[] append(PotionMix[] mixes, PotionMix mix) {
+        PotionMix[] result = Arrays.copyOf(mixes, mixes.length + 1);
+        result[mixes.length] = mix;
+        return result;
+    }
+
+    private static PotionMix[] without(PotionMix[] mixes, PotionMix mix) {
+        for (int i = 0; i < mixes.length; i++) {
+            if (mixes[i] != mix) {
+                continue;
+            }
+            PotionMix[] result = new PotionMix[mixes.length - 1];
+            System.arraycopy(mixes, 0, result, 0, i);
+            System.arraycopy(mixes, i + 1, result, i, mixes.length - i - 1);
+            return result;
+        }
+        return mixes;
+    }
+}
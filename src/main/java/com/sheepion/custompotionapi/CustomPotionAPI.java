@@ -1,7 +1,10 @@
 package com.sheepion.custompotionapi;
 
+import org.bukkit.command.PluginCommand;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+
 /**
  * To use this api to create your own custom potion,
  * you need to create a new class that implements the CustomPotionEffectType interface,
@@ -13,6 +16,17 @@ import org.bukkit.plugin.java.JavaPlugin;
 public final class CustomPotionAPI extends JavaPlugin {
     private static CustomPotionAPI instance;
 
+    /**
+     * ticks every active custom potion effect,
+     * on the entities' region threads if the server is region threaded
+     */
+    private final EffectScheduler effectScheduler = RegionizedEffectScheduler.isSupported() ? new RegionizedEffectScheduler() : new EffectTickEngine();
+
+    /**
+     * saves the effects of players across restarts
+     */
+    private EffectPersistence effectPersistence;
+
     /**
      * initializes the plugin
      */
@@ -27,13 +41,63 @@ public final class CustomPotionAPI extends JavaPlugin {
         return instance;
     }
 
+    /**
+     * @return the scheduler that ticks every active custom potion effect
+     */
+    public static EffectScheduler getEffectScheduler() {
+        return instance.effectScheduler;
+    }
+
+    /**
+     * @return the engine that ticks every active custom potion effect on the main thread,
+     * null if the server is region threaded, see getEffectScheduler()
+     */
+    public static EffectTickEngine getTickEngine() {
+        return instance.effectScheduler instanceof EffectTickEngine tickEngine ? tickEngine : null;
+    }
+
+    /**
+     * @return the persistence layer of players' effects, null before the plugin is enabled
+     */
+    public static EffectPersistence getEffectPersistence() {
+        return instance.effectPersistence;
+    }
+
     @Override
     public void onEnable() {
         // Plugin startup logic
+        saveDefaultConfig();
+        EffectTypeIds.load(new File(getDataFolder(), "type-ids.yml"));
+        long tickBudget = (long) (getConfig().getDouble("tick-budget-ms") * 1_000_000L);
+        int maxDeferTicks = getConfig().getInt("max-defer-ticks", 20);
+        if (effectScheduler instanceof EffectTickEngine tickEngine) {
+            tickEngine.setTickBudget(tickBudget);
+            tickEngine.setMaxDeferTicks(maxDeferTicks);
+        } else if (effectScheduler instanceof RegionizedEffectScheduler regionizedScheduler) {
+            regionizedScheduler.setTickBudget(tickBudget);
+            regionizedScheduler.setMaxDeferTicks(maxDeferTicks);
+        }
+        effectScheduler.start(this);
+        CustomPotionManager.getParkedEffects().setMaxAge(getConfig().getLong("parked-effects-max-minutes", 60) * 60_000L);
+        effectPersistence = new EffectPersistence(this, new File(getDataFolder(), "effects"));
+        effectPersistence.start();
+        PluginCommand command = getCommand("cpapi");
+        if (command != null) {
+            command.setExecutor(new CustomPotionCommand());
+        }
     }
 
     @Override
     public void onDisable() {
         // Plugin shutdown logic
+        //save the players' effects first, nothing below may keep them from being saved
+        if (effectPersistence != null) {
+            effectPersistence.shutdown();
+        }
+        EffectTypeIds.flush();
+        //does not touch CustomPotionManager, which may never have been initialized
+        ActiveEffectExporter.stopAll();
+        effectScheduler.stop();
+        EffectComputePool.shutdown();
     }
 }
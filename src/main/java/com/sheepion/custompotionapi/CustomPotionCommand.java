@@ -0,0 +1,99 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the /cpapi command.<br>
+ * generally not to be used from within a plugin.
+ *
+ * @author Sheepion
+ */
+public class CustomPotionCommand implements TabExecutor {
+    /**
+     * the max number of lines shown by /cpapi stats
+     */
+    private static final int STATS_LINES = 10;
+
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+        if (args.length == 0 || !args[0].equalsIgnoreCase("stats")) {
+            sender.sendMessage("usage: /" + label + " stats [on|off|reset]");
+            return true;
+        }
+        if (args.length == 1) {
+            sendStats(sender);
+            return true;
+        }
+        switch (args[1].toLowerCase()) {
+            case "on" -> {
+                EffectMetrics.setEnabled(true);
+                sender.sendMessage("custom potion metrics enabled.");
+            }
+            case "off" -> {
+                EffectMetrics.setEnabled(false);
+                sender.sendMessage("custom potion metrics disabled.");
+            }
+            case "reset" -> {
+                EffectMetrics.reset();
+                sender.sendMessage("custom potion metrics reset.");
+            }
+            default -> sender.sendMessage("usage: /" + label + " stats [on|off|reset]");
+        }
+        return true;
+    }
+
+    /**
+     * send the most expensive effect stages and listener handlers, sorted by total time
+     *
+     * @param sender the command sender
+     */
+    private void sendStats(CommandSender sender) {
+        sender.sendMessage("custom potion metrics are " + (EffectMetrics.isEnabled() ? "enabled" : "disabled") + ", /cpapi stats on|off|reset");
+        if (EffectMetrics.getBudgetOverruns() > 0) {
+            sender.sendMessage("tick budget exceeded in " + EffectMetrics.getBudgetOverruns() + " ticks, "
+                    + EffectMetrics.getDeferredRuns() + " effect runs deferred");
+        }
+        if (EffectComputePool.getPipelinedRuns() + EffectComputePool.getSynchronousRuns() > 0) {
+            sender.sendMessage("async effect runs: " + EffectComputePool.getPipelinedRuns() + " pipelined, "
+                    + EffectComputePool.getSynchronousRuns() + " computed synchronously");
+        }
+        ArrayList<Map.Entry<String, EffectMetrics.Timer>> lines = new ArrayList<>();
+        for (Map.Entry<NamespacedKey, EffectMetrics.Timer[]> entry : EffectMetrics.getEffectTimers().entrySet()) {
+            for (EffectMetrics.Stage stage : EffectMetrics.Stage.values()) {
+                EffectMetrics.Timer timer = entry.getValue()[stage.ordinal()];
+                if (timer.getCount() > 0) {
+                    lines.add(Map.entry(entry.getKey() + " " + stage.name().toLowerCase(), timer));
+                }
+            }
+        }
+        for (Map.Entry<String, EffectMetrics.Timer> entry : EffectMetrics.getListenerTimers().entrySet()) {
+            lines.add(Map.entry("listener " + entry.getKey(), entry.getValue()));
+        }
+        lines.sort(Comparator.comparingLong((Map.Entry<String, EffectMetrics.Timer> line) -> line.getValue().getTotalNanos()).reversed());
+        for (int i = 0; i < Math.min(STATS_LINES, lines.size()); i++) {
+            EffectMetrics.Timer timer = lines.get(i).getValue();
+            sender.sendMessage(String.format("%s: %d calls, total %.2fms, avg %.1fus, max %.1fus",
+                    lines.get(i).getKey(), timer.getCount(), timer.getTotalNanos() / 1e6, timer.getAverageNanos() / 1e3, timer.getMaxNanos() / 1e3));
+        }
+    }
+
+    @Override
+    public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+        if (args.length == 1) {
+            return List.of("stats");
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("stats")) {
+            return List.of("on", "off", "reset");
+        }
+        return List.of();
+    }
+}
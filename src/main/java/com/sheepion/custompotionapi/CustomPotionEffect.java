@@ -4,13 +4,16 @@ import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.projectiles.ProjectileSource;
-import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-import static com.sheepion.custompotionapi.CustomPotionManager.getActiveEffectsOnEntity;
+import static com.sheepion.custompotionapi.CustomPotionManager.getActiveEffectStore;
+import static com.sheepion.custompotionapi.CustomPotionManager.getEffectExporter;
 
 /**
  * presents a custom potion effect with specified effect type, duration, amplifier and check interval.
@@ -21,10 +24,28 @@ public class CustomPotionEffect implements Runnable {
 
     private final CustomPotionEffectProperty property;
 
-    private BukkitTask task;
     private LivingEntity entity;
     private final CustomPotionEffectType effectType;
 
+    /**
+     * the handle of the effect in the ActiveEffectStore, only touched by the store.
+     */
+    int handle = ActiveEffectStore.NO_HANDLE;
+
+    /**
+     * the state of the effect in the EffectTickEngine, only touched by the engine.
+     */
+    boolean ticking;
+    long dueTick;
+    CustomPotionEffect wheelPrev;
+    CustomPotionEffect wheelNext;
+    EffectTickEngine.Bucket wheelBucket;
+
+    /**
+     * the result of the next run computed in the background, only used by AsyncCustomPotionEffectType
+     */
+    private CompletableFuture<?> computed;
+
     /**
      * return the effect type of the effect
      *
@@ -90,8 +111,14 @@ public class CustomPotionEffect implements Runnable {
         return entity;
     }
 
-    private void setTask(BukkitTask task) {
-        this.task = task;
+    /**
+     * get the handle of the applied effect,
+     * use CustomPotionManager#getEffectByHandle(int) to find the effect again without allocating.
+     *
+     * @return the handle, ActiveEffectStore.NO_HANDLE if the effect is not applied
+     */
+    public int getHandle() {
+        return handle;
     }
 
     private void setEntity(LivingEntity entity) {
@@ -131,24 +158,138 @@ public class CustomPotionEffect implements Runnable {
     }
 
     /**
-     * add effect to entity
+     * add effect to entity<br>
+     * if the entity already has an effect of this type, the stacking policy of the type decides
+     * whether the existing effect is updated or a new instance is added.
      *
      * @param entity entity to add effect to
      * @return true if success, false if failed
      */
     public boolean apply(@NotNull LivingEntity entity) {
-        if (!effectType.canBeApplied(entity, property)) {
-            return false;
+        return apply(entity, EffectLifecycleBus.Phase.APPLY);
+    }
+
+    /**
+     * add a paused effect to the entity again, like apply(LivingEntity) but fires RESUME instead of APPLY
+     *
+     * @param entity entity to add effect to
+     * @return true if success, false if failed
+     */
+    boolean resume(@NotNull LivingEntity entity) {
+        return apply(entity, EffectLifecycleBus.Phase.RESUME);
+    }
+
+    private boolean apply(LivingEntity entity, EffectLifecycleBus.Phase phase) {
+        long start = EffectMetrics.start();
+        try {
+            if (!effectType.canBeApplied(entity, property)) {
+                return false;
+            }
+            Boolean stacked = stack(entity);
+            if (stacked != null) {
+                return stacked;
+            }
+            CustomPotionEffect potionEffect = copyForApply();
+            potionEffect.setEntity(entity);
+            long beforeApplyStart = EffectMetrics.start();
+            potionEffect.getEffectType().beforeApply(entity, potionEffect.property);
+            EffectMetrics.record(effectType.getKey(), EffectMetrics.Stage.BEFORE_APPLY, beforeApplyStart);
+            CustomPotionAPI.getEffectScheduler().schedule(potionEffect, property.getDelay());
+            getActiveEffectStore().add(entity.getUniqueId(), potionEffect);
+            EffectLifecycleBus.fire(phase, potionEffect);
+            return true;
+        } finally {
+            EffectMetrics.record(effectType.getKey(), EffectMetrics.Stage.APPLY, start);
+        }
+    }
+
+    /**
+     * add effect to all the entities at once.<br>
+     * the entities are checked by CustomPotionEffectType#canBeAppliedBatch(...),
+     * then every entity gets its own copy of this effect,
+     * and all the copies are scheduled and stored together.
+     *
+     * @param entities entities to add effect to
+     * @return the number of entities the effect was added to
+     */
+    public int applyAll(@NotNull Collection<? extends LivingEntity> entities) {
+        if (entities.isEmpty()) {
+            return 0;
+        }
+        long start = EffectMetrics.start();
+        try {
+            List<? extends LivingEntity> targets = effectType.canBeAppliedBatch(entities, property);
+            if (targets.isEmpty()) {
+                return 0;
+            }
+            ArrayList<CustomPotionEffect> potionEffects = new ArrayList<>(targets.size());
+            int stackedCount = 0;
+            for (LivingEntity entity : targets) {
+                Boolean stacked = stack(entity);
+                if (stacked != null) {
+                    stackedCount += stacked ? 1 : 0;
+                    continue;
+                }
+                CustomPotionEffect potionEffect = copyForApply();
+                potionEffect.setEntity(entity);
+                potionEffects.add(potionEffect);
+            }
+            if (potionEffects.isEmpty()) {
+                return stackedCount;
+            }
+            long beforeApplyStart = EffectMetrics.start();
+            effectType.beforeApplyBatch(potionEffects);
+            EffectMetrics.record(effectType.getKey(), EffectMetrics.Stage.BEFORE_APPLY_BATCH, beforeApplyStart);
+            CustomPotionAPI.getEffectScheduler().scheduleAll(potionEffects, property.getDelay());
+            getActiveEffectStore().addAll(potionEffects);
+            for (CustomPotionEffect potionEffect : potionEffects) {
+                EffectLifecycleBus.fire(EffectLifecycleBus.Phase.APPLY, potionEffect);
+            }
+            return stackedCount + potionEffects.size();
+        } finally {
+            EffectMetrics.record(effectType.getKey(), EffectMetrics.Stage.APPLY_BATCH, start);
+        }
+    }
+
+    /**
+     * stack this effect onto the effect of the same type the entity already has,
+     * following the stacking policy of the effect type.
+     *
+     * @param entity the entity
+     * @return null if a new instance should be applied, otherwise if this effect was applied.
+     */
+    private @Nullable Boolean stack(LivingEntity entity) {
+        CustomPotionEffect existing = getActiveEffectStore().getFirstEffect(entity.getUniqueId(), effectType.getKey());
+        if (existing == null) {
+            return null;
         }
-        CustomPotionEffect potionEffect = copy();
-        potionEffect.setEntity(entity);
-        potionEffect.getEffectType().beforeApply(entity, potionEffect.property);
-        potionEffect.setTask(CustomPotionAPI.getInstance().getServer().getScheduler().runTaskTimer(CustomPotionAPI.getInstance(), potionEffect, property.getDelay(), property.getCheckInterval()));
-        if (!getActiveEffectsOnEntity().containsKey(entity.getUniqueId())) {
-            getActiveEffectsOnEntity().put(entity.getUniqueId(), new ArrayList<>());
+        CustomPotionEffectProperty current = existing.getProperty();
+        switch (effectType.stackingPolicy()) {
+            case REFRESH_DURATION:
+                current.setRestDuration(Math.max(current.getRestDuration(), property.getRestDuration()));
+                current.setAmplifier(Math.max(current.getAmplifier(), property.getAmplifier()));
+                getEffectExporter().markChanged(existing);
+                return true;
+            case KEEP_STRONGEST:
+                if (property.getAmplifier() > current.getAmplifier()) {
+                    existing.cancel();
+                    return null;
+                }
+                if (property.getAmplifier() == current.getAmplifier() && property.getRestDuration() > current.getRestDuration()) {
+                    //refresh in place, so a cloud pulsing the same effect does not cancel and apply it again every time
+                    current.setRestDuration(property.getRestDuration());
+                    getEffectExporter().markChanged(existing);
+                    return true;
+                }
+                return false;
+            case ADDITIVE:
+                long restDuration = (long) current.getRestDuration() + property.getRestDuration();
+                current.setRestDuration((int) Math.min(Integer.MAX_VALUE, restDuration));
+                getEffectExporter().markChanged(existing);
+                return true;
+            default:
+                return getActiveEffectStore().countEffects(entity.getUniqueId(), effectType.getKey()) >= effectType.maxStacks() ? false : null;
         }
-        getActiveEffectsOnEntity().get(entity.getUniqueId()).add(potionEffect);
-        return true;
     }
 
     /**
@@ -168,35 +309,107 @@ public class CustomPotionEffect implements Runnable {
      * remove this effect from entity
      */
     public void cancel() {
-        if (task != null) {
-            task.cancel();
-        }
-        if (getActiveEffectsOnEntity().containsKey(entity.getUniqueId())) {
-            getActiveEffectsOnEntity().get(entity.getUniqueId()).remove(this);
+        remove(EffectLifecycleBus.Phase.CANCEL);
+    }
+
+    /**
+     * remove this effect from entity because it ran out of duration
+     */
+    void expire() {
+        remove(EffectLifecycleBus.Phase.EXPIRE);
+    }
+
+    private void remove(EffectLifecycleBus.Phase phase) {
+        CustomPotionAPI.getEffectScheduler().unschedule(this);
+        discardComputed();
+        boolean removed = getActiveEffectStore().remove(entity.getUniqueId(), this);
+        if (removed) {
+            EffectLifecycleBus.fire(phase, this);
         }
     }
 
+    /**
+     * detach this effect and fire PAUSE, used when the effect is kept to be resumed later.
+     */
+    void pause() {
+        detach();
+        EffectLifecycleBus.fire(EffectLifecycleBus.Phase.PAUSE, this);
+    }
+
+    /**
+     * stop ticking this effect,
+     * used when the effect is removed from the store without being cancelled.
+     */
+    void detach() {
+        CustomPotionAPI.getEffectScheduler().unschedule(this);
+        discardComputed();
+    }
+
     @Override
     public void run() {
         //skip if player offline
         if (entity instanceof Player && !((Player) entity).isOnline()) {
-            //don't use cancel() because it will remove the effect from the list.
-            //keep the instance in the list, so that it can be applied again when the player comes back online.
-            task.cancel();
+            //the effects are normally saved and removed from memory when the player quits.
+            //don't use cancel() here, keep the instance so it is still saved and applied again when the player joins.
+            CustomPotionAPI.getEffectScheduler().unschedule(this);
+            EffectLifecycleBus.fire(EffectLifecycleBus.Phase.PAUSE, this);
             return;
         }
         property.setRestDuration(property.getRestDuration() - property.getCheckInterval());
         if (property.getRestDuration() < 0) {
-            cancel();
+            expire();
             return;
         }
         if (entity.isDead() || !entity.isValid()) {
             cancel();
             return;
         }
-        effectType.effect(entity, property);
+        long start = EffectMetrics.start();
+        if (effectType instanceof AsyncCustomPotionEffectType<?> asyncType) {
+            computeAndCommit(asyncType);
+        } else {
+            effectType.effect(entity, property);
+        }
+        EffectMetrics.record(effectType.getKey(), EffectMetrics.Stage.EFFECT, start);
+        EffectLifecycleBus.fire(EffectLifecycleBus.Phase.TICK, this);
         if (property.getRestDuration() == 0) {
-            cancel();
+            expire();
+        }
+    }
+
+    /**
+     * commit the result computed in the background, or compute it now if it is not ready,
+     * then start computing the result of the next run.
+     *
+     * @param asyncType the effect type
+     * @param <R>       the result type
+     */
+    @SuppressWarnings("unchecked")
+    private <R> void computeAndCommit(AsyncCustomPotionEffectType<R> asyncType) {
+        CompletableFuture<?> computed = this.computed;
+        this.computed = null;
+        R result;
+        if (computed != null && computed.isDone() && !computed.isCompletedExceptionally()) {
+            result = (R) computed.join();
+            EffectComputePool.recordPipelined();
+        } else {
+            if (computed != null) {
+                computed.cancel(false);
+            }
+            result = asyncType.compute(EffectSnapshot.of(this));
+            EffectComputePool.recordSynchronous();
+        }
+        asyncType.commit(entity, property, result);
+        if (ticking && property.getCheckInterval() > 0 && property.getRestDuration() > 0 && entity.isValid()) {
+            EffectSnapshot snapshot = EffectSnapshot.of(this);
+            this.computed = EffectComputePool.submit(() -> asyncType.compute(snapshot));
+        }
+    }
+
+    private void discardComputed() {
+        if (computed != null) {
+            computed.cancel(false);
+            computed = null;
         }
     }
 
@@ -208,4 +421,13 @@ public class CustomPotionEffect implements Runnable {
     public @NotNull CustomPotionEffect copy() {
         return new CustomPotionEffect(effectType, property.clone());
     }
+
+    /**
+     * copy a new CustomPotionEffect to apply, its property only keeps the potion item and the shooter if the effect type asks for them.
+     *
+     * @return the new CustomPotionEffect
+     */
+    private @NotNull CustomPotionEffect copyForApply() {
+        return new CustomPotionEffect(effectType, property.copyForApply(effectType.retainPotionItem(), effectType.retainShooter()));
+    }
 }
@@ -5,7 +5,8 @@ import org.bukkit.projectiles.ProjectileSource;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * presents a custom potion effect' properties
+ * presents a custom potion effect' properties<br>
+ * the property of an applied effect only keeps the potion item and the shooter if its effect type asks for them.
  *
  * @author Sheepion
  */
@@ -13,12 +14,12 @@ public class CustomPotionEffectProperty {
     /**
      * the potion item that carries the effect
      */
-    private final ItemStack potion;
+    private @Nullable ItemStack potion;
 
     /**
      * the effect's duration
      */
-    private final int duration;
+    private int duration;
 
     /**
      * the effect's rest duration
@@ -35,12 +36,12 @@ public class CustomPotionEffectProperty {
     /**
      * the effect's check interval
      */
-    private final int checkInterval;
+    private int checkInterval;
 
     /**
      * the ticks before the effect starts.
      */
-    private final int delay;
+    private int delay;
 
     /**
      * the shooter of the splash/lingering potion
@@ -48,11 +49,12 @@ public class CustomPotionEffectProperty {
     private @Nullable ProjectileSource shooter;
 
     /**
-     * get the mutable potion item that carries the effect
+     * get the mutable potion item that carries the effect<br>
+     * the potion of an applied effect is only kept if CustomPotionEffectType#retainPotionItem() returns true.
      *
      * @return the potion item
      */
-    public ItemStack getPotion() {
+    public @Nullable ItemStack getPotion() {
         return potion;
     }
 
@@ -161,6 +163,8 @@ public class CustomPotionEffectProperty {
     }
 
     /**
+     * the shooter of an applied effect is only kept if CustomPotionEffectType#retainShooter() returns true.
+     *
      * @return the shooter of the splash/lingering potion
      */
     public @Nullable ProjectileSource getShooter() {
@@ -180,6 +184,18 @@ public class CustomPotionEffectProperty {
      * @return a copy of this property
      */
     public CustomPotionEffectProperty clone() {
-        return new CustomPotionEffectProperty(potion, shooter, duration, restDuration, amplifier, ambient, checkInterval, delay);
+        return new CustomPotionEffectProperty(potion, shooter, getDuration(), getRestDuration(), getAmplifier(), isAmbient(), getCheckInterval(), getDelay());
+    }
+
+    /**
+     * create a copy of this property for an effect that is being applied
+     *
+     * @param keepPotion  if the copy keeps the potion item
+     * @param keepShooter if the copy keeps the shooter
+     * @return the copy
+     */
+    CustomPotionEffectProperty copyForApply(boolean keepPotion, boolean keepShooter) {
+        return new CustomPotionEffectProperty(keepPotion ? potion : null, keepShooter ? shooter : null,
+                duration, restDuration, amplifier, ambient, checkInterval, delay);
     }
 }
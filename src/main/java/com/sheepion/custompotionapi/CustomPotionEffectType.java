@@ -11,6 +11,8 @@ import org.bukkit.entity.LivingEntity;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * project name: CustomPotionAPI
@@ -69,6 +71,79 @@ public interface CustomPotionEffectType {
      */
     boolean canBeApplied(LivingEntity entity, CustomPotionEffectProperty property);
 
+    /**
+     * what happens when this effect is applied to an entity that already has an effect of this type.<br>
+     * for example an entity standing in an area effect cloud gets the effect again every reapplication delay,
+     * with REFRESH_DURATION the entity keeps one effect instance instead of stacking a new one every time,
+     * and a stronger potion still raises its amplifier.
+     *
+     * @return the stacking policy
+     */
+    default StackingPolicy stackingPolicy() {
+        return StackingPolicy.REFRESH_DURATION;
+    }
+
+    /**
+     * the priority of the effects of this type when a tick runs out of its budget.<br>
+     * effects that do not fit in the budget are deferred to the next tick, their cadence and rest duration are kept.
+     *
+     * @return the priority
+     */
+    default EffectPriority priority() {
+        return EffectPriority.NORMAL;
+    }
+
+    /**
+     * the max number of effects of this type on one entity when the stacking policy is INDEPENDENT.<br>
+     * new effects are not applied once the entity has this many.
+     *
+     * @return the max number of effects of this type on one entity
+     */
+    default int maxStacks() {
+        return 16;
+    }
+
+    /**
+     * if the applied effects of this type keep the potion item that brought them.<br>
+     * the item is dropped by default to save memory, CustomPotionEffectProperty#getPotion() then returns null
+     * in beforeApply(...) and effect(...). return true if your effect reads the potion item.
+     *
+     * @return true to keep the potion item
+     */
+    default boolean retainPotionItem() {
+        return false;
+    }
+
+    /**
+     * if the applied effects of this type keep the shooter of the splash/lingering potion.<br>
+     * the shooter is dropped by default to save memory, CustomPotionEffectProperty#getShooter() then returns null
+     * in beforeApply(...) and effect(...). return true if your effect reads the shooter.
+     *
+     * @return true to keep the shooter
+     */
+    default boolean retainShooter() {
+        return false;
+    }
+
+    /**
+     * check which entities can be applied by this potion effect, used when one effect is applied to many entities,
+     * such as a splash potion or an area effect cloud.<br>
+     * override this if you can check many entities faster than one by one.
+     *
+     * @param entities the entities to check
+     * @param property the property of the potion effect
+     * @return the entities that can be applied by this potion effect
+     */
+    default List<? extends LivingEntity> canBeAppliedBatch(Collection<? extends LivingEntity> entities, CustomPotionEffectProperty property) {
+        ArrayList<LivingEntity> result = new ArrayList<>(entities.size());
+        for (LivingEntity entity : entities) {
+            if (canBeApplied(entity, property)) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
     /**
      * if the effect can be removed by milk
      * this will be automatically called by CustomPotionManager when entity drinks milk.
@@ -101,6 +176,19 @@ public interface CustomPotionEffectType {
      */
     void beforeApply(LivingEntity entity, CustomPotionEffectProperty property);
 
+    /**
+     * the things you want to do before the potion effect is applied to many entities at once<br>
+     * every effect already has its own entity and property copy, see beforeApply(LivingEntity, CustomPotionEffectProperty).<br>
+     * override this if you can prepare many entities faster than one by one.
+     *
+     * @param effects the effects that are going to be applied
+     */
+    default void beforeApplyBatch(List<CustomPotionEffect> effects) {
+        for (CustomPotionEffect effect : effects) {
+            beforeApply(effect.getEntity(), effect.getProperty());
+        }
+    }
+
     /**
      * the potion effect to the entity<br>
      * this method will be called every %checkInterval% ticks for %duration% ticks.<br>
@@ -159,6 +247,18 @@ public interface CustomPotionEffectType {
      */
     @Nullable ArrayList<PotionMix> potionMixes();
 
+    /**
+     * if the potion items of this type can be built once and then copied.<br>
+     * the items are cached by material, duration, amplifier, check interval and delay,
+     * return false if the display name, lore, color or glow depends on anything else,
+     * such as the rest duration, the shooter or the time.
+     *
+     * @return true if the potion items can be cached
+     */
+    default boolean cachePotionItem() {
+        return true;
+    }
+
     /**
      * get the display name of the potion item
      * used when create the potion item by CustomPotionManager#getPotion(...)
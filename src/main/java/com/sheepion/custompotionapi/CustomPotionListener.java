@@ -1,6 +1,9 @@
 package com.sheepion.custompotionapi;
 
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
 import org.bukkit.block.Block;
 import org.bukkit.entity.*;
 import org.bukkit.event.EventHandler;
@@ -8,11 +11,21 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.*;
 import org.bukkit.event.player.PlayerItemConsumeEvent;
+import org.bukkit.event.player.PlayerItemHeldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.inventory.ItemStack;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.sheepion.custompotionapi.CustomPotionManager.*;
 
@@ -24,6 +37,41 @@ import static com.sheepion.custompotionapi.CustomPotionManager.*;
  * @author Sheepion
  */
 public class CustomPotionListener implements Listener {
+    /**
+     * the max distance between two creeper clouds of the same effect type that are merged into one
+     */
+    private static final double CLOUD_MERGE_DISTANCE = 1.0;
+
+    /**
+     * the effects decoded from thrown potions in the current tick.<br>
+     * a thrown potion fires ProjectileHitEvent and then PotionSplashEvent or LingeringPotionSplashEvent,
+     * this makes sure its item is only decoded once.
+     * the map is shared by the region threads on a region threaded server.
+     */
+    private final ConcurrentHashMap<UUID, CustomPotionEffect> thrownPotionEffects = new ConcurrentHashMap<>();
+
+    /**
+     * decode the effect of the thrown potion, the result is kept until the end of the tick.
+     *
+     * @param thrownPotion the thrown potion
+     * @return the effect, null if the potion is not a custom potion
+     */
+    private CustomPotionEffect decodeThrownPotion(ThrownPotion thrownPotion) {
+        CustomPotionEffect customEffect = thrownPotionEffects.get(thrownPotion.getUniqueId());
+        if (customEffect != null) {
+            return customEffect;
+        }
+        customEffect = getCustomPotionEffect(thrownPotion.getItem());
+        if (customEffect == null) {
+            return null;
+        }
+        customEffect.getProperty().setShooter(thrownPotion.getShooter());
+        if (thrownPotionEffects.isEmpty()) {
+            CustomPotionAPI.getEffectScheduler().runLater(thrownPotionEffects::clear, 1L);
+        }
+        thrownPotionEffects.put(thrownPotion.getUniqueId(), customEffect);
+        return customEffect;
+    }
 
     /**
      * apply unfinished potion effect to the player
@@ -32,20 +80,126 @@ public class CustomPotionListener implements Listener {
      */
     @EventHandler(ignoreCancelled = true)
     private void onPlayerJoin(PlayerJoinEvent event) {
-        Player player = event.getPlayer();
-        if (!getActiveEffectsOnEntity().containsKey(player.getUniqueId())) {
-            getActiveEffectsOnEntity().put(player.getUniqueId(), new ArrayList<>());
+        long start = EffectMetrics.start();
+        try {
+            Player player = event.getPlayer();
+            //apply unfinished potion effects, they are copied to the new player instance by apply()
+            for (CustomPotionEffect customPotionEffect : getActiveEffectStore().removeAll(player.getUniqueId())) {
+                //pause the old instance like a quit does, so lifecycle listeners see it end before its copy resumes
+                customPotionEffect.pause();
+                customPotionEffect.resume(player);
+            }
+        } finally {
+            EffectMetrics.recordListener("onPlayerJoin", start);
         }
-        ArrayList<CustomPotionEffect> unfinishedEffects = getActiveEffectsOnEntity().get(player.getUniqueId());
-        ArrayList<CustomPotionEffect> needsRemoval = new ArrayList<>();
-        //apply unfinished potion effects
-        for (CustomPotionEffect customPotionEffect : unfinishedEffects) {
-            customPotionEffect.apply(player);
-            needsRemoval.add(customPotionEffect);
+    }
+
+    /**
+     * rewrite the held custom potion in the compact format if it was written by an older version.<br>
+     * this changes the inventory, so it runs at HIGHEST instead of MONITOR.
+     *
+     * @param event the event
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.HIGHEST)
+    public void onPlayerItemHeld(PlayerItemHeldEvent event) {
+        long start = EffectMetrics.start();
+        try {
+            ItemStack item = event.getPlayer().getInventory().getItem(event.getNewSlot());
+            //only potions can be legacy custom potions, do not clone the meta of every held item
+            if (item != null && PotionItemFormat.isPotionMaterial(item.getType()) && PotionItemFormat.migrate(item)) {
+                event.getPlayer().getInventory().setItem(event.getNewSlot(), item);
+            }
+        } finally {
+            EffectMetrics.recordListener("onPlayerItemHeld", start);
         }
-        //remove the unfinished effects from the list
-        for (CustomPotionEffect customPotionEffect : needsRemoval) {
-            unfinishedEffects.remove(customPotionEffect);
+    }
+
+    /**
+     * remove all the potion effects when the entity dies
+     *
+     * @param event the event
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onEntityDeath(EntityDeathEvent event) {
+        long start = EffectMetrics.start();
+        try {
+            for (CustomPotionEffect customPotionEffect : getActivePotionEffects(event.getEntity().getUniqueId())) {
+                customPotionEffect.cancel();
+            }
+        } finally {
+            EffectMetrics.recordListener("onEntityDeath", start);
+        }
+    }
+
+    /**
+     * park the effects of the unloading entities, before they are removed from the world.
+     *
+     * @param event the event
+     */
+    @EventHandler
+    public void onEntitiesUnload(EntitiesUnloadEvent event) {
+        long start = EffectMetrics.start();
+        try {
+            getParkedEffects().park(event.getChunk(), event.getEntities());
+        } finally {
+            EffectMetrics.recordListener("onEntitiesUnload", start);
+        }
+    }
+
+    /**
+     * resume the parked effects of the loaded entities
+     *
+     * @param event the event
+     */
+    @EventHandler
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        long start = EffectMetrics.start();
+        try {
+            getParkedEffects().resume(event.getChunk(), event.getEntities());
+        } finally {
+            EffectMetrics.recordListener("onEntitiesLoad", start);
+        }
+    }
+
+    /**
+     * drop the parked effects of the unloading world, its chunks will not load again
+     *
+     * @param event the event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        long start = EffectMetrics.start();
+        try {
+            getParkedEffects().dropWorld(event.getWorld().getUID());
+        } finally {
+            EffectMetrics.recordListener("onWorldUnload", start);
+        }
+    }
+
+    /**
+     * remove all the potion effects when a non-player entity is removed from the world.<br>
+     * the effects of players are kept, they will be applied again when the player joins.
+     * the effects of entities in unloading chunks are already parked by onEntitiesUnload.<br>
+     * area effect clouds are untracked.
+     *
+     * @param event the event
+     */
+    @EventHandler
+    public void onEntityRemoveFromWorld(EntityRemoveFromWorldEvent event) {
+        long start = EffectMetrics.start();
+        try {
+            if (event.getEntity() instanceof AreaEffectCloud) {
+                getAreaEffectCloudTracker().untrack(event.getEntity().getUniqueId());
+                return;
+            }
+            if (event.getEntity() instanceof Player) {
+                return;
+            }
+            for (CustomPotionEffect customPotionEffect : getActivePotionEffects(event.getEntity().getUniqueId())) {
+                customPotionEffect.cancel();
+            }
+        } finally {
+            EffectMetrics.recordListener("onEntityRemoveFromWorld", start);
         }
     }
 
@@ -56,19 +210,37 @@ public class CustomPotionListener implements Listener {
      */
     @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
     public void onEntityExplode(EntityExplodeEvent event) {
-        Entity entity = event.getEntity();
-        if (entity instanceof Creeper creeper) {
-            if (getActivePotionEffects(creeper.getUniqueId()).size() > 0) {
-                for (CustomPotionEffect potionEffect : getActivePotionEffects(creeper.getUniqueId())) {
-                    if (potionEffect.getEffectType().spawnAreaEffectCloudOnCreeperExplosion(creeper, potionEffect.getProperty())) {
-                        AreaEffectCloud areaEffectCloud = (AreaEffectCloud) creeper.getWorld().spawnEntity(creeper.getLocation(), EntityType.AREA_EFFECT_CLOUD, CreatureSpawnEvent.SpawnReason.EXPLOSION);
-                        areaEffectCloud.setColor(potionEffect.getEffectType().lingeringPotionColor(potionEffect.getProperty()));
-                        areaEffectCloud.addCustomEffect(new PotionEffect(PotionEffectType.BLINDNESS, 0, 0), true);
-                        setAreaEffectCloudProperties(potionEffect, areaEffectCloud);
-                        getAreaEffectClouds().put(areaEffectCloud, potionEffect);
-                    }
+        long start = EffectMetrics.start();
+        try {
+            if (!(event.getEntity() instanceof Creeper creeper)) {
+                return;
+            }
+            //one cloud per effect type, carrying every effect of that type on the creeper
+            LinkedHashMap<NamespacedKey, List<CustomPotionEffect>> byType = new LinkedHashMap<>();
+            for (CustomPotionEffect potionEffect : getActivePotionEffects(creeper.getUniqueId())) {
+                if (potionEffect.getEffectType().spawnAreaEffectCloudOnCreeperExplosion(creeper, potionEffect.getProperty())) {
+                    byType.computeIfAbsent(potionEffect.getEffectType().getKey(), key -> new ArrayList<>()).add(potionEffect);
                 }
             }
+            Location location = creeper.getLocation();
+            for (Map.Entry<NamespacedKey, List<CustomPotionEffect>> entry : byType.entrySet()) {
+                List<CustomPotionEffect> effects = entry.getValue();
+                CustomPotionEffect potionEffect = effects.get(0);
+                AreaEffectCloudTracker.TrackedCloud mergeTarget = getAreaEffectCloudTracker().findMergeTarget(location, entry.getKey(), CLOUD_MERGE_DISTANCE);
+                if (mergeTarget != null && creeper.getWorld().getEntity(mergeTarget.getUniqueId()) instanceof AreaEffectCloud existing) {
+                    //another creeper exploded here, keep its cloud alive for at least as long as a new one
+                    existing.setDuration(Math.max(existing.getDuration(), existing.getTicksLived() + potionEffect.getEffectType().areaEffectCloudDuration(potionEffect.getProperty())));
+                    mergeTarget.addEffects(effects);
+                    continue;
+                }
+                AreaEffectCloud areaEffectCloud = (AreaEffectCloud) creeper.getWorld().spawnEntity(location, EntityType.AREA_EFFECT_CLOUD, CreatureSpawnEvent.SpawnReason.EXPLOSION);
+                areaEffectCloud.setColor(potionEffect.getEffectType().lingeringPotionColor(potionEffect.getProperty()));
+                areaEffectCloud.addCustomEffect(new PotionEffect(PotionEffectType.BLINDNESS, 0, 0), true);
+                setAreaEffectCloudProperties(potionEffect, areaEffectCloud);
+                getAreaEffectCloudTracker().track(areaEffectCloud, effects);
+            }
+        } finally {
+            EffectMetrics.recordListener("onEntityExplode", start);
         }
     }
 
@@ -79,14 +251,19 @@ public class CustomPotionListener implements Listener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onPlayerItemConsume(PlayerItemConsumeEvent event) {
-        if (event.getItem().getType() != Material.POTION) {
-            return;
-        }
-        CustomPotionEffect customEffect = getCustomPotionEffect(event.getItem());
-        if (customEffect == null) {
-            return;
+        long start = EffectMetrics.start();
+        try {
+            if (event.getItem().getType() != Material.POTION) {
+                return;
+            }
+            CustomPotionEffect customEffect = getCustomPotionEffect(event.getItem());
+            if (customEffect == null) {
+                return;
+            }
+            customEffect.apply(event.getPlayer());
+        } finally {
+            EffectMetrics.recordListener("onPlayerItemConsume", start);
         }
-        customEffect.apply(event.getPlayer());
     }
 
 
@@ -97,15 +274,20 @@ public class CustomPotionListener implements Listener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onPlayerDrinksMilk(PlayerItemConsumeEvent event) {
-        if (event.getItem().getType() != Material.MILK_BUCKET) {
-            return;
-        }
-        Player player = event.getPlayer();
-        getActivePotionEffects(event.getPlayer().getUniqueId()).forEach(customPotionEffect -> {
-            if (customPotionEffect.getEffectType().canBeRemovedByMilk(player, customPotionEffect.getProperty())) {
-                customPotionEffect.cancel();
+        long start = EffectMetrics.start();
+        try {
+            if (event.getItem().getType() != Material.MILK_BUCKET) {
+                return;
             }
-        });
+            Player player = event.getPlayer();
+            getActivePotionEffects(event.getPlayer().getUniqueId()).forEach(customPotionEffect -> {
+                if (customPotionEffect.getEffectType().canBeRemovedByMilk(player, customPotionEffect.getProperty())) {
+                    customPotionEffect.cancel();
+                }
+            });
+        } finally {
+            EffectMetrics.recordListener("onPlayerDrinksMilk", start);
+        }
     }
 
     /**
@@ -115,32 +297,37 @@ public class CustomPotionListener implements Listener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onProjectileHit(ProjectileHitEvent event) {
-        if (!(event.getEntity() instanceof ThrownPotion thrownPotion)) {
-            return;
-        }
-        CustomPotionEffect customEffect = getCustomPotionEffect(thrownPotion.getItem());
-        if (customEffect == null) {
-            return;
-        }
-        CustomPotionEffectType customPotionEffectType = customEffect.getEffectType();
-        customEffect.getProperty().setShooter(thrownPotion.getShooter());
-        //handle potion hit block effect
-        Block block = event.getHitBlock();
-        if (block != null) {
-            if (thrownPotion.getItem().getType() == Material.SPLASH_POTION) {
-                customPotionEffectType.splashPotionHitBlockEffect(block, customEffect.getProperty());
-            } else if (thrownPotion.getItem().getType() == Material.LINGERING_POTION) {
-                customPotionEffectType.lingeringPotionHitBlockEffect(block, customEffect.getProperty());
+        long start = EffectMetrics.start();
+        try {
+            if (!(event.getEntity() instanceof ThrownPotion thrownPotion)) {
+                return;
             }
-        }
-        //handle potion hit entity effect
-        Entity entity = event.getHitEntity();
-        if (entity != null) {
-            if (thrownPotion.getItem().getType() == Material.SPLASH_POTION) {
-                customPotionEffectType.splashPotionHitEntityEffect(entity, customEffect.getProperty());
-            } else if (thrownPotion.getItem().getType() == Material.LINGERING_POTION) {
-                customPotionEffectType.lingeringPotionHitEntityEffect(entity, customEffect.getProperty());
+            CustomPotionEffect customEffect = decodeThrownPotion(thrownPotion);
+            if (customEffect == null) {
+                return;
+            }
+            CustomPotionEffectType customPotionEffectType = customEffect.getEffectType();
+            Material material = thrownPotion.getItem().getType();
+            //handle potion hit block effect
+            Block block = event.getHitBlock();
+            if (block != null) {
+                if (material == Material.SPLASH_POTION) {
+                    customPotionEffectType.splashPotionHitBlockEffect(block, customEffect.getProperty());
+                } else if (material == Material.LINGERING_POTION) {
+                    customPotionEffectType.lingeringPotionHitBlockEffect(block, customEffect.getProperty());
+                }
             }
+            //handle potion hit entity effect
+            Entity entity = event.getHitEntity();
+            if (entity != null) {
+                if (material == Material.SPLASH_POTION) {
+                    customPotionEffectType.splashPotionHitEntityEffect(entity, customEffect.getProperty());
+                } else if (material == Material.LINGERING_POTION) {
+                    customPotionEffectType.lingeringPotionHitEntityEffect(entity, customEffect.getProperty());
+                }
+            }
+        } finally {
+            EffectMetrics.recordListener("onProjectileHit", start);
         }
     }
 
@@ -151,12 +338,16 @@ public class CustomPotionListener implements Listener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onPotionSplash(PotionSplashEvent event) {
-        CustomPotionEffect customEffect = getCustomPotionEffect(event.getEntity().getItem());
-        if (customEffect == null) {
-            return;
+        long start = EffectMetrics.start();
+        try {
+            CustomPotionEffect customEffect = decodeThrownPotion(event.getEntity());
+            if (customEffect == null) {
+                return;
+            }
+            customEffect.applyAll(event.getAffectedEntities());
+        } finally {
+            EffectMetrics.recordListener("onPotionSplash", start);
         }
-        customEffect.getProperty().setShooter(event.getEntity().getShooter());
-        event.getAffectedEntities().forEach(customEffect::apply);
     }
 
     /**
@@ -166,14 +357,18 @@ public class CustomPotionListener implements Listener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onLingeringPotionSplash(LingeringPotionSplashEvent event) {
-        CustomPotionEffect customPotionEffect = getCustomPotionEffect(event.getEntity().getItem());
-        if (customPotionEffect == null) {
-            return;
-        }
-        customPotionEffect.getProperty().setShooter(event.getEntity().getShooter());
-        AreaEffectCloud areaEffectCloud = event.getAreaEffectCloud();
-        setAreaEffectCloudProperties(customPotionEffect, areaEffectCloud);
-        getAreaEffectClouds().put(event.getAreaEffectCloud(), customPotionEffect);
+        long start = EffectMetrics.start();
+        try {
+            CustomPotionEffect customPotionEffect = decodeThrownPotion(event.getEntity());
+            if (customPotionEffect == null) {
+                return;
+            }
+            AreaEffectCloud areaEffectCloud = event.getAreaEffectCloud();
+            setAreaEffectCloudProperties(customPotionEffect, areaEffectCloud);
+            getAreaEffectCloudTracker().track(areaEffectCloud, customPotionEffect);
+        } finally {
+            EffectMetrics.recordListener("onLingeringPotionSplash", start);
+        }
     }
 
     /**
@@ -183,11 +378,22 @@ public class CustomPotionListener implements Listener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onAreaEffectCloudApply(AreaEffectCloudApplyEvent event) {
-        CustomPotionEffect customPotionEffect = getAreaEffectClouds().get(event.getEntity());
-        if (customPotionEffect != null) {
-            for (LivingEntity affectedEntity : event.getAffectedEntities()) {
-                customPotionEffect.apply(affectedEntity);
+        long start = EffectMetrics.start();
+        try {
+            List<CustomPotionEffect> customPotionEffects = getAreaEffectCloudTracker().getEffects(event.getEntity().getUniqueId());
+            if (customPotionEffects.isEmpty()) {
+                return;
+            }
+            for (CustomPotionEffect customPotionEffect : customPotionEffects) {
+                customPotionEffect.applyAll(event.getAffectedEntities());
+            }
+            AreaEffectCloud areaEffectCloud = event.getEntity();
+            if (!event.getAffectedEntities().isEmpty() && areaEffectCloud.getRadiusOnUse() != 0) {
+                //the cloud shrinks or grows by its radius on use right after this event
+                getAreaEffectCloudTracker().updateRadius(areaEffectCloud, areaEffectCloud.getRadius() + areaEffectCloud.getRadiusOnUse());
             }
+        } finally {
+            EffectMetrics.recordListener("onAreaEffectCloudApply", start);
         }
     }
 }
@@ -5,23 +5,27 @@ import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
 import org.bukkit.enchantments.Enchantment;
 import org.bukkit.entity.AreaEffectCloud;
+import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
 import org.bukkit.inventory.ItemFlag;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.inventory.meta.PotionMeta;
 import org.bukkit.persistence.PersistentDataContainer;
-import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.potion.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
-
-import static com.sheepion.custompotionapi.PropertyKey.*;
+import java.util.function.Consumer;
 
 /**
  * Everything you need to manage your potions.
@@ -32,48 +36,112 @@ public class CustomPotionManager implements Listener {
     /**
      * used to store custom potion effect on area effect clouds.
      */
-    private static final HashMap<AreaEffectCloud, CustomPotionEffect> areaEffectClouds = new HashMap<>();
+    private static final AreaEffectCloudTracker areaEffectClouds = new AreaEffectCloudTracker();
 
     static {
+        //the listener untracks area effect clouds when they are removed from the world
         CustomPotionAPI.getInstance().getServer().getPluginManager().registerEvents(new CustomPotionListener(), CustomPotionAPI.getInstance());
-        //clear dead area effect clouds task
-        CustomPotionAPI.getInstance().getServer().getScheduler().runTaskTimerAsynchronously(CustomPotionAPI.getInstance(), () -> {
-            ArrayList<AreaEffectCloud> toRemove = new ArrayList<>();
-            for (AreaEffectCloud areaEffectCloud : areaEffectClouds.keySet()) {
-                if (areaEffectCloud.isDead()) {
-                    toRemove.add(areaEffectCloud);
-                }
-            }
-            for (AreaEffectCloud areaEffectCloud : toRemove) {
-                areaEffectClouds.remove(areaEffectCloud);
-            }
-        }, 0L, 40L);
     }
 
     /**
-     * used to store all the custom potion types
+     * used to store all the custom potion effects an entity has
      */
-    private static final HashSet<CustomPotionEffectType> customPotionEffectTypes = new HashSet<>();
+    private static final ActiveEffectStore activeEffects = new ActiveEffectStore();
 
     /**
-     * used to store all the custom potion effects an entity has
+     * used to cache the decoded custom potion items
+     */
+    private static final PotionDecodeCache decodeCache = new PotionDecodeCache(PotionDecodeCache.DEFAULT_MAX_SIZE);
+
+    /**
+     * used to cache the pre-built custom potion items
+     */
+    private static final PotionTemplateCache templateCache = new PotionTemplateCache(PotionTemplateCache.DEFAULT_MAX_SIZE);
+
+    /**
+     * used to cache the display names and lore of custom potion items
+     */
+    private static final PotionTextRenderer textRenderer = new PotionTextRenderer(PotionTextRenderer.DEFAULT_MAX_SIZE);
+
+    /**
+     * used to publish snapshots of the active effects, only runs when started
+     */
+    private static final ActiveEffectExporter effectExporter = new ActiveEffectExporter();
+
+    /**
+     * used to keep the effects of entities in unloaded chunks
+     */
+    private static final ParkedEffects parkedEffects = new ParkedEffects();
+
+    /**
+     * used to index the potion mixes of the registered types
+     */
+    private static final BrewingRecipeIndex brewingRecipes = new BrewingRecipeIndex();
+
+    /**
+     * @return the tracker of the area effect clouds that carry custom potion effects.
      */
-    private static final HashMap<UUID, ArrayList<CustomPotionEffect>> activeEffectsOnEntity = new HashMap<>();
+    public static @NotNull AreaEffectCloudTracker getAreaEffectCloudTracker() {
+        return areaEffectClouds;
+    }
 
     /**
-     * return the custom potion effect on area effect clouds.
+     * return a copy of the custom potion effect on loaded area effect clouds.<br>
+     * changing the map will not change the tracked clouds, this must be called from the main thread.
      *
      * @return the area effect clouds map.
+     * @deprecated use getAreaEffectCloudTracker() instead
      */
+    @Deprecated
     public static HashMap<AreaEffectCloud, CustomPotionEffect> getAreaEffectClouds() {
-        return areaEffectClouds;
+        HashMap<AreaEffectCloud, CustomPotionEffect> result = new HashMap<>();
+        for (AreaEffectCloudTracker.TrackedCloud trackedCloud : areaEffectClouds.getClouds()) {
+            if (CustomPotionAPI.getInstance().getServer().getEntity(trackedCloud.getUniqueId()) instanceof AreaEffectCloud areaEffectCloud) {
+                result.put(areaEffectCloud, trackedCloud.getEffect());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the store of all the custom potion effects applied on entities.
+     */
+    public static @NotNull ActiveEffectStore getActiveEffectStore() {
+        return activeEffects;
+    }
+
+    /**
+     * @return the effects of entities in unloaded chunks.
+     */
+    public static @NotNull ParkedEffects getParkedEffects() {
+        return parkedEffects;
     }
 
     /**
-     * @return the active effects on entity.
+     * @return the index of the potion mixes registered by the custom potion effect types.
      */
+    public static @NotNull BrewingRecipeIndex getBrewingRecipeIndex() {
+        return brewingRecipes;
+    }
+
+    /**
+     * @return the exporter of versioned snapshots of all the active effects, call start() on it to use it.
+     */
+    public static @NotNull ActiveEffectExporter getEffectExporter() {
+        return effectExporter;
+    }
+
+    /**
+     * @return a copy of the active effects on entity, changing it will not change the applied effects.
+     * @deprecated use getActiveEffectStore() instead
+     */
+    @Deprecated
     public static HashMap<UUID, ArrayList<CustomPotionEffect>> getActiveEffectsOnEntity() {
-        return activeEffectsOnEntity;
+        HashMap<UUID, ArrayList<CustomPotionEffect>> result = new HashMap<>();
+        for (UUID uuid : activeEffects.getEntities()) {
+            result.put(uuid, activeEffects.getEffects(uuid));
+        }
+        return result;
     }
 
     /**
@@ -84,14 +152,7 @@ public class CustomPotionManager implements Listener {
      * @return all the effects with the specific type that applied to the entity.
      */
     public static @NotNull ArrayList<CustomPotionEffect> getActivePotionEffect(UUID uuid, @NotNull CustomPotionEffectType customPotionEffectType) {
-        ArrayList<CustomPotionEffect> customPotionEffects = activeEffectsOnEntity.get(uuid);
-        ArrayList<CustomPotionEffect> result = new ArrayList<>();
-        for (CustomPotionEffect customPotionEffect : customPotionEffects) {
-            if (customPotionEffect.getEffectType().getKey().equals(customPotionEffectType.getKey())) {
-                result.add(customPotionEffect);
-            }
-        }
-        return result;
+        return activeEffects.getEffects(uuid, customPotionEffectType.getKey());
     }
 
     /**
@@ -101,11 +162,7 @@ public class CustomPotionManager implements Listener {
      * @return the potion effects. the array list would be empty if the entity has no potion effects
      */
     public static @NotNull ArrayList<CustomPotionEffect> getActivePotionEffects(UUID uuid) {
-        ArrayList<CustomPotionEffect> customPotionEffects = activeEffectsOnEntity.get(uuid);
-        if (customPotionEffects == null) {
-            return new ArrayList<>();
-        }
-        return new ArrayList<>(customPotionEffects);
+        return activeEffects.getEffects(uuid);
     }
 
     /**
@@ -116,7 +173,54 @@ public class CustomPotionManager implements Listener {
      * @return true if the entity has the potion effect, false otherwise
      */
     public static boolean isPotionEffectActive(UUID uuid, CustomPotionEffectType customPotionEffectType) {
-        return getActivePotionEffect(uuid, customPotionEffectType).isEmpty();
+        return hasEffect(uuid, customPotionEffectType);
+    }
+
+    /**
+     * judge if the entity has potion effect applied with the specific effect type.<br>
+     * this never allocates, it is safe to call every tick.
+     *
+     * @param uuid                   the entity uuid
+     * @param customPotionEffectType the potion effect type
+     * @return true if the entity has the potion effect, false otherwise
+     */
+    public static boolean hasEffect(@NotNull UUID uuid, @NotNull CustomPotionEffectType customPotionEffectType) {
+        return activeEffects.hasEffect(uuid, customPotionEffectType.getKey());
+    }
+
+    /**
+     * count the effects with the specific effect type applied on the entity.<br>
+     * this never allocates, it is safe to call every tick.
+     *
+     * @param uuid                   the entity uuid
+     * @param customPotionEffectType the potion effect type
+     * @return the number of effects
+     */
+    public static int countEffects(@NotNull UUID uuid, @NotNull CustomPotionEffectType customPotionEffectType) {
+        return activeEffects.countEffects(uuid, customPotionEffectType.getKey());
+    }
+
+    /**
+     * call the action for every effect with the specific effect type applied on the entity.<br>
+     * this never allocates, it is safe to call every tick.
+     *
+     * @param uuid                   the entity uuid
+     * @param customPotionEffectType the potion effect type
+     * @param action                 the action
+     */
+    public static void forEachEffect(@NotNull UUID uuid, @NotNull CustomPotionEffectType customPotionEffectType, @NotNull Consumer<? super CustomPotionEffect> action) {
+        activeEffects.forEachEffect(uuid, customPotionEffectType.getKey(), action);
+    }
+
+    /**
+     * get the applied effect by its handle, see CustomPotionEffect#getHandle().<br>
+     * this never allocates, it is safe to call every tick.
+     *
+     * @param handle the effect handle
+     * @return the effect, null if it is not applied anymore
+     */
+    public static @Nullable CustomPotionEffect getEffectByHandle(int handle) {
+        return activeEffects.getEffect(handle);
     }
 
     /**
@@ -140,25 +244,144 @@ public class CustomPotionManager implements Listener {
     /**
      * register a custom potion effect type
      * this will register the listeners either if your class implemented Listener interface
+     * if a type with the same key is already registered, it will be replaced.
      *
      * @param customPotionEffectType the custom potion effect type
      */
     public static void registerPotionEffectType(CustomPotionEffectType customPotionEffectType) {
-        //add to type list
-        customPotionEffectTypes.add(customPotionEffectType);
-        //register the listeners if necessary
-        if (customPotionEffectType instanceof Listener) {
-            CustomPotionAPI.getInstance().getServer().getPluginManager().registerEvents((Listener) customPotionEffectType, CustomPotionAPI.getInstance());
+        registerPotionEffectTypes(List.of(customPotionEffectType));
+    }
+
+    /**
+     * register many custom potion effect types at once, prefer it over registerPotionEffectType(...) at startup.<br>
+     * the registry is copied once, and the potion mixes of all the types are gathered by key first,
+     * so a mix is committed to the potion brewer at most once, and not at all if the same mix is already registered.<br>
+     * if several types have the same key, the last one is registered.
+     *
+     * @param customPotionEffectTypes the custom potion effect types
+     */
+    public static void registerPotionEffectTypes(@NotNull Collection<? extends CustomPotionEffectType> customPotionEffectTypes) {
+        //add to the registry
+        Map<NamespacedKey, CustomPotionEffectType> previousTypes = EffectTypeRegistry.registerAll(customPotionEffectTypes);
+        LinkedHashMap<NamespacedKey, CustomPotionEffectType> registered = new LinkedHashMap<>();
+        for (CustomPotionEffectType customPotionEffectType : customPotionEffectTypes) {
+            registered.put(customPotionEffectType.getKey(), customPotionEffectType);
+        }
+        decodeCache.clear();
+        LinkedHashMap<NamespacedKey, PotionMix> potionMixes = new LinkedHashMap<>();
+        for (CustomPotionEffectType customPotionEffectType : registered.values()) {
+            NamespacedKey key = customPotionEffectType.getKey();
+            templateCache.invalidate(key);
+            textRenderer.invalidate(key);
+            CustomPotionEffectType previous = previousTypes.get(key);
+            if (previous instanceof Listener && previous != customPotionEffectType) {
+                HandlerList.unregisterAll((Listener) previous);
+            }
+            //register the listeners if necessary
+            if (customPotionEffectType instanceof Listener && previous != customPotionEffectType) {
+                CustomPotionAPI.getInstance().getServer().getPluginManager().registerEvents((Listener) customPotionEffectType, CustomPotionAPI.getInstance());
+            }
+            //gather potion mix recipes, a later mix with the same key wins
+            ArrayList<PotionMix> typeMixes = customPotionEffectType.potionMixes();
+            if (typeMixes != null) {
+                for (PotionMix potionMix : typeMixes) {
+                    potionMixes.put(potionMix.getKey(), potionMix);
+                }
+            }
+        }
+        //diff the potion mix recipes against the index
+        ArrayList<NamespacedKey> removedMixes = new ArrayList<>();
+        for (CustomPotionEffectType previous : previousTypes.values()) {
+            ArrayList<PotionMix> previousMixes = previous.potionMixes();
+            if (previousMixes == null) {
+                continue;
+            }
+            for (PotionMix potionMix : previousMixes) {
+                //the replaced type's mixes that the new types dropped
+                if (!potionMixes.containsKey(potionMix.getKey()) && brewingRecipes.remove(potionMix.getKey()) != null) {
+                    removedMixes.add(potionMix.getKey());
+                }
+            }
+        }
+        ArrayList<PotionMix> addedMixes = new ArrayList<>();
+        for (PotionMix potionMix : potionMixes.values()) {
+            if (brewingRecipes.add(potionMix)) {
+                addedMixes.add(potionMix);
+            }
+        }
+        if (removedMixes.isEmpty() && addedMixes.isEmpty()) {
+            return;
+        }
+        //commit potion mix recipes in one pass, only touch the brewer when something changed
+        PotionBrewer potionBrewer = CustomPotionAPI.getInstance().getServer().getPotionBrewer();
+        for (NamespacedKey key : removedMixes) {
+            potionBrewer.removePotionMix(key);
+        }
+        for (PotionMix potionMix : addedMixes) {
+            potionBrewer.removePotionMix(potionMix.getKey());
+            potionBrewer.addPotionMix(potionMix);
+        }
+    }
+
+    /**
+     * register many custom potion effect types at once
+     *
+     * @param customPotionEffectTypes the custom potion effect types
+     * @see #registerPotionEffectTypes(Collection)
+     */
+    public static void registerPotionEffectTypes(@NotNull CustomPotionEffectType... customPotionEffectTypes) {
+        registerPotionEffectTypes(Arrays.asList(customPotionEffectTypes));
+    }
+
+    /**
+     * unregister a custom potion effect type,
+     * its listeners and potion mix recipes will be unregistered too.<br>
+     * the effects that are already applied to entities will not be removed.
+     *
+     * @param key the namespaced key of the custom potion effect type
+     * @return the unregistered type, null if no type is registered with the key
+     */
+    public static @Nullable CustomPotionEffectType unregisterPotionEffectType(@NotNull NamespacedKey key) {
+        CustomPotionEffectType removed = EffectTypeRegistry.unregister(key);
+        if (removed == null) {
+            return null;
+        }
+        decodeCache.clear();
+        templateCache.invalidate(key);
+        textRenderer.invalidate(key);
+        if (removed instanceof Listener) {
+            HandlerList.unregisterAll((Listener) removed);
         }
-        //register potion mix recipes
-        ArrayList<PotionMix> potionMixes = customPotionEffectType.potionMixes();
+        ArrayList<PotionMix> potionMixes = removed.potionMixes();
         if (potionMixes != null) {
             PotionBrewer potionBrewer = CustomPotionAPI.getInstance().getServer().getPotionBrewer();
             for (PotionMix potionMix : potionMixes) {
+                brewingRecipes.remove(potionMix.getKey());
                 potionBrewer.removePotionMix(potionMix.getKey());
-                potionBrewer.addPotionMix(potionMix);
             }
         }
+        return removed;
+    }
+
+    /**
+     * get the registered custom potion effect type.<br>
+     * this is safe to call from any thread.
+     *
+     * @param key the namespaced key of the custom potion effect type
+     * @return the custom potion effect type, null if not registered
+     */
+    public static @Nullable CustomPotionEffectType getPotionEffectType(@Nullable NamespacedKey key) {
+        return EffectTypeRegistry.get(key);
+    }
+
+    /**
+     * get all the registered custom potion effect types.<br>
+     * this is safe to call from any thread.
+     *
+     * @return an immutable snapshot of the registered types
+     */
+    public static @NotNull Map<NamespacedKey, CustomPotionEffectType> getPotionEffectTypes() {
+        return EffectTypeRegistry.snapshot();
     }
 
     /**
@@ -168,45 +391,50 @@ public class CustomPotionManager implements Listener {
      * @return the potion effect, null if not found
      */
     public static @Nullable CustomPotionEffect getCustomPotionEffect(@NotNull ItemStack item) {
-        if (item.getItemMeta() == null) {
+        PotionDecodeCache.DecodedPotion decoded = decodePotion(item);
+        if (decoded == null) {
+            return null;
+        }
+        return new CustomPotionEffect(decoded.type(), item, null, decoded.duration(), decoded.amplifier(), decoded.checkInterval(), decoded.delay());
+    }
+
+    /**
+     * decode the custom potion effect type and properties stored in an item.<br>
+     * the result is cached by the values stored in the item, so decoding the same potion again is cheap.
+     *
+     * @param item the item
+     * @return the decoded potion, null if the item is not a custom potion or its type is not registered
+     */
+    public static @Nullable PotionDecodeCache.DecodedPotion decodePotion(@NotNull ItemStack item) {
+        ItemMeta meta = item.getItemMeta();
+        if (meta == null) {
             return null;
         }
-        PersistentDataContainer pdc = item.getItemMeta().getPersistentDataContainer();
         // check if the potion is a custom potion
-        String typeKey = pdc.get(EFFECT_TYPE, PersistentDataType.STRING);
-        if (typeKey == null) {
+        PotionDecodeCache.Signature signature = PotionItemFormat.read(meta.getPersistentDataContainer());
+        if (signature == null) {
             return null;
         }
-        //get the effect information
-        NamespacedKey type = NamespacedKey.fromString(typeKey);
-        assert type != null;
-        CustomPotionEffectType customPotionEffectType = null;
-        for (CustomPotionEffectType potionEffectType : customPotionEffectTypes) {
-            if (potionEffectType.getKey().equals(type)) {
-                customPotionEffectType = potionEffectType;
-            }
+        PotionDecodeCache.DecodedPotion decoded = decodeCache.get(signature);
+        if (decoded != null) {
+            return decoded;
         }
+        //get the effect information
+        CustomPotionEffectType customPotionEffectType = EffectTypeRegistry.get(EffectTypeIds.keyOf(signature.typeId()));
         // check if the potion effect type is valid
         if (customPotionEffectType == null) {
             return null;
         }
-        Integer duration = pdc.get(EFFECT_DURATION, PersistentDataType.INTEGER);
-        if (duration == null) {
-            duration = 0;
-        }
-        Integer checkInterval = pdc.get(EFFECT_CHECK_INTERVAL, PersistentDataType.INTEGER);
-        if (checkInterval == null) {
-            checkInterval = 20;
-        }
-        Integer amplifier = pdc.get(EFFECT_AMPLIFIER, PersistentDataType.INTEGER);
-        if (amplifier == null) {
-            amplifier = 0;
-        }
-        Integer delay = pdc.get(EFFECT_DELAY, PersistentDataType.INTEGER);
-        if (delay == null) {
-            delay = 0;
-        }
-        return new CustomPotionEffect(customPotionEffectType, item, null, duration, amplifier, checkInterval, delay);
+        decoded = new PotionDecodeCache.DecodedPotion(customPotionEffectType, signature.duration(), signature.amplifier(), signature.checkInterval(), signature.delay());
+        decodeCache.put(signature, decoded);
+        return decoded;
+    }
+
+    /**
+     * @return the cache of decoded potion items, use it to read the hit and miss counters.
+     */
+    public static @NotNull PotionDecodeCache getDecodeCache() {
+        return decodeCache;
     }
 
     /**
@@ -218,45 +446,95 @@ public class CustomPotionManager implements Listener {
      * @return the custom potion item
      */
     public static ItemStack getPotion(Material material, NamespacedKey customPotionEffectType, CustomPotionEffectProperty property) {
+        CustomPotionEffectType potionEffectType = EffectTypeRegistry.get(customPotionEffectType);
+        if (potionEffectType == null || !potionEffectType.cachePotionItem()) {
+            return buildPotion(material, customPotionEffectType, potionEffectType, property);
+        }
+        PotionTemplateCache.Key key = PotionTemplateCache.Key.of(material, customPotionEffectType, property);
+        ItemStack result = templateCache.get(key);
+        if (result == null) {
+            result = buildPotion(material, customPotionEffectType, potionEffectType, property);
+            templateCache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the cache of pre-built custom potion items
+     */
+    public static @NotNull PotionTemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    /**
+     * create a custom potion item use given material, with its name and lore translated to the locale
+     *
+     * @param material               the material of the potion
+     * @param customPotionEffectType the custom potion effect type
+     * @param property               the potion property
+     * @param locale                 the locale of the player who gets the item
+     * @return the custom potion item
+     */
+    public static ItemStack getPotion(Material material, NamespacedKey customPotionEffectType, CustomPotionEffectProperty property, @NotNull Locale locale) {
+        ItemStack result = getPotion(material, customPotionEffectType, property);
+        CustomPotionEffectType potionEffectType = EffectTypeRegistry.get(customPotionEffectType);
+        if (potionEffectType == null) {
+            return result;
+        }
+        PotionTextRenderer.RenderedText text = textRenderer.render(potionEffectType, material, property, locale);
+        ItemMeta meta = result.getItemMeta();
+        meta.displayName(text.displayName());
+        meta.lore(text.lore());
+        result.setItemMeta(meta);
+        return result;
+    }
+
+    /**
+     * @return the cache of the display names and lore of custom potion items
+     */
+    public static @NotNull PotionTextRenderer getTextRenderer() {
+        return textRenderer;
+    }
+
+    /**
+     * build a new custom potion item
+     *
+     * @param material               the material of the potion
+     * @param customPotionEffectType the custom potion effect type key
+     * @param potionEffectType       the registered type, null if not registered
+     * @param property               the potion property
+     * @return the custom potion item
+     */
+    private static ItemStack buildPotion(Material material, NamespacedKey customPotionEffectType, @Nullable CustomPotionEffectType potionEffectType, CustomPotionEffectProperty property) {
         ItemStack result = new ItemStack(material);
         ItemMeta meta = result.getItemMeta();
         meta.addItemFlags(ItemFlag.HIDE_POTION_EFFECTS);
         meta.addItemFlags(ItemFlag.HIDE_ENCHANTS);
         PersistentDataContainer pdc = meta.getPersistentDataContainer();
         //set the name, lore, color, enchant glow.
-        for (CustomPotionEffectType potionEffectType : customPotionEffectTypes) {
-            if (potionEffectType.getKey().equals(customPotionEffectType)) {
-                if (material.equals(Material.POTION)) {
-                    ((PotionMeta) meta).setColor(potionEffectType.potionColor(property));
-                    meta.displayName(potionEffectType.potionDisplayName(property));
-                    meta.lore(potionEffectType.potionLore(property));
-                    if (potionEffectType.potionEnchanted(property)) {
-                        meta.addEnchant(Enchantment.DURABILITY, 1, true);
-                    }
-                } else if (material.equals(Material.SPLASH_POTION)) {
-                    ((PotionMeta) meta).setColor(potionEffectType.splashPotionColor(property));
-                    meta.displayName(potionEffectType.splashPotionDisplayName(property));
-                    meta.lore(potionEffectType.splashPotionLore(property));
-                    if (potionEffectType.splashPotionEnchanted(property)) {
-                        meta.addEnchant(Enchantment.DURABILITY, 1, true);
-                    }
-                } else if (material.equals(Material.LINGERING_POTION)) {
-                    ((PotionMeta) meta).setColor(potionEffectType.lingeringPotionColor(property));
-                    ((PotionMeta) meta).addCustomEffect(new PotionEffect(PotionEffectType.BLINDNESS, 0, 0, false, false, false), true);
-                    meta.displayName(potionEffectType.lingeringPotionDisplayName(property));
-                    meta.lore(potionEffectType.lingeringPotionLore(property));
-                    if (potionEffectType.lingeringPotionEnchanted(property)) {
-                        meta.addEnchant(Enchantment.DURABILITY, 1, true);
-                    }
+        if (potionEffectType != null && meta instanceof PotionMeta) {
+            PotionTextRenderer.RenderedText text = textRenderer.render(potionEffectType, material, property);
+            meta.displayName(text.displayName());
+            meta.lore(text.lore());
+            if (material.equals(Material.POTION)) {
+                ((PotionMeta) meta).setColor(potionEffectType.potionColor(property));
+                if (potionEffectType.potionEnchanted(property)) {
+                    meta.addEnchant(Enchantment.DURABILITY, 1, true);
+                }
+            } else if (material.equals(Material.SPLASH_POTION)) {
+                ((PotionMeta) meta).setColor(potionEffectType.splashPotionColor(property));
+                if (potionEffectType.splashPotionEnchanted(property)) {
+                    meta.addEnchant(Enchantment.DURABILITY, 1, true);
+                }
+            } else if (material.equals(Material.LINGERING_POTION)) {
+                ((PotionMeta) meta).setColor(potionEffectType.lingeringPotionColor(property));
+                ((PotionMeta) meta).addCustomEffect(new PotionEffect(PotionEffectType.BLINDNESS, 0, 0, false, false, false), true);
+                if (potionEffectType.lingeringPotionEnchanted(property)) {
+                    meta.addEnchant(Enchantment.DURABILITY, 1, true);
                 }
-                break;
             }
         }
-        pdc.set(EFFECT_TYPE, PersistentDataType.STRING, customPotionEffectType.toString());
-        pdc.set(EFFECT_DURATION, PersistentDataType.INTEGER, property.getDuration());
-        pdc.set(EFFECT_CHECK_INTERVAL, PersistentDataType.INTEGER, property.getCheckInterval());
-        pdc.set(EFFECT_AMPLIFIER, PersistentDataType.INTEGER, property.getAmplifier());
-        pdc.set(EFFECT_DELAY, PersistentDataType.INTEGER, property.getDelay());
+        PotionItemFormat.write(pdc, customPotionEffectType, property);
         result.setItemMeta(meta);
         return result;
     }
@@ -0,0 +1,127 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * the compact binary format of the stored effects of one entity.<br>
+ * layout: magic, version, entity uuid, effect count, then every effect as
+ * type key, duration, rest duration, amplifier, ambient, check interval and delay.
+ * numbers are written as zigzag varints, so most of them take one or two bytes.
+ *
+ * @author Sheepion
+ */
+public final class EffectCodec {
+    /**
+     * "CPAE", the first bytes of the format
+     */
+    public static final int MAGIC = 0x43504145;
+
+    /**
+     * the current version of the format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * the smallest encoded effect, as written by encode(UUID, List):
+     * the 2 byte utf length, the shortest namespaced key "a:b", the five varints of at least one byte each,
+     * and the ambient flag
+     */
+    private static final int MIN_EFFECT_BYTES = 2 + 3 + 5 + 1;
+
+    private EffectCodec() {
+    }
+
+    /**
+     * @param uuid    the entity uuid
+     * @param effects the effects
+     * @return the encoded bytes
+     */
+    public static byte @NotNull [] encode(@NotNull UUID uuid, @NotNull List<StoredEffect> effects) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(24 + effects.size() * 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            writeVarInt(out, VERSION);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+            writeVarInt(out, effects.size());
+            for (StoredEffect effect : effects) {
+                out.writeUTF(effect.type().toString());
+                writeVarInt(out, effect.duration());
+                writeVarInt(out, effect.restDuration());
+                writeVarInt(out, effect.amplifier());
+                out.writeBoolean(effect.ambient());
+                writeVarInt(out, effect.checkInterval());
+                writeVarInt(out, effect.delay());
+            }
+        } catch (IOException e) {
+            //never thrown by a byte array stream
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param data the encoded bytes
+     * @return the decoded effects
+     * @throws IOException if the data is not in this format or has an unknown version
+     */
+    public static @NotNull List<StoredEffect> decode(byte @NotNull [] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a custom potion effect file");
+        }
+        int version = readVarInt(in);
+        if (version != VERSION) {
+            throw new IOException("unknown custom potion effect file version " + version);
+        }
+        //the uuid, the caller already knows it
+        in.readLong();
+        in.readLong();
+        int count = readVarInt(in);
+        //do not trust the count of a corrupt file, every effect takes at least MIN_EFFECT_BYTES
+        if (count < 0 || count > in.available() / MIN_EFFECT_BYTES) {
+            throw new IOException("corrupt custom potion effect file, " + count + " effects do not fit in " + in.available() + " bytes");
+        }
+        ArrayList<StoredEffect> effects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            NamespacedKey type = NamespacedKey.fromString(in.readUTF());
+            int duration = readVarInt(in);
+            int restDuration = readVarInt(in);
+            int amplifier = readVarInt(in);
+            boolean ambient = in.readBoolean();
+            int checkInterval = readVarInt(in);
+            int delay = readVarInt(in);
+            if (type != null) {
+                effects.add(new StoredEffect(type, duration, restDuration, amplifier, ambient, checkInterval, delay));
+            }
+        }
+        return effects;
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            out.writeByte((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.writeByte(zigzag);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int zigzag = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+}
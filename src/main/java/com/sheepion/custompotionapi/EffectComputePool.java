@@ -0,0 +1,92 @@
+package com.sheepion.custompotionapi;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * the worker threads that run AsyncCustomPotionEffectType#compute(EffectSnapshot) ahead of the effects' next run.<br>
+ * the threads are daemon threads and are created on the first submit.
+ *
+ * @author Sheepion
+ */
+public final class EffectComputePool {
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final LongAdder pipelined = new LongAdder();
+    private static final LongAdder synchronous = new LongAdder();
+    private static ExecutorService executor;
+    private static boolean shutdown;
+
+    private EffectComputePool() {
+    }
+
+    /**
+     * run the computation on a worker thread
+     *
+     * @param computation the computation
+     * @param <R>         the result type
+     * @return the future result, null if the pool is shut down
+     */
+    static <R> @Nullable CompletableFuture<R> submit(@NotNull Supplier<R> computation) {
+        try {
+            return CompletableFuture.supplyAsync(computation, executor());
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (shutdown) {
+            throw new RejectedExecutionException("the effect compute pool is shut down");
+        }
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "CustomPotionAPI Effect Compute " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * stop the worker threads, the effects compute synchronously from now on
+     */
+    public static synchronized void shutdown() {
+        shutdown = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        executor = null;
+    }
+
+    static void recordPipelined() {
+        pipelined.increment();
+    }
+
+    static void recordSynchronous() {
+        synchronous.increment();
+    }
+
+    /**
+     * @return the number of runs that used a result computed in the background
+     */
+    public static long getPipelinedRuns() {
+        return pipelined.sum();
+    }
+
+    /**
+     * @return the number of runs that had to compute synchronously
+     */
+    public static long getSynchronousRuns() {
+        return synchronous.sum();
+    }
+}
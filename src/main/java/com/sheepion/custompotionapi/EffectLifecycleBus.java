@@ -0,0 +1,205 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * notifies listeners when custom potion effects start, tick and end, without the bukkit event system.<br>
+ * every phase has its own listener array, and every effect type has its own arrays too,
+ * so firing a phase nobody listens to only reads one volatile field,
+ * and a listener subscribed to one effect type is never called for the others.<br>
+ * the arrays are copied on every change, listeners can be added and removed from any thread,
+ * and they are called on the thread that ticks the effect.
+ *
+ * @author Sheepion
+ */
+public final class EffectLifecycleBus {
+    /**
+     * the phases of an effect's life
+     */
+    public enum Phase {
+        /**
+         * the effect was applied to an entity, not fired when the effect was stacked onto an existing one
+         */
+        APPLY,
+        /**
+         * the effect ran CustomPotionEffectType#effect(...)
+         */
+        TICK,
+        /**
+         * the effect ran out of duration and was removed
+         */
+        EXPIRE,
+        /**
+         * the effect was removed before it ran out, by CustomPotionEffect#cancel(), milk, death or a stronger effect
+         */
+        CANCEL,
+        /**
+         * the effect stopped ticking but was kept, for example because the player quit
+         */
+        PAUSE,
+        /**
+         * a paused effect was applied again
+         */
+        RESUME
+    }
+
+    /**
+     * a listener of one phase
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param effect the effect, its entity is set
+         */
+        void handle(@NotNull CustomPotionEffect effect);
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+
+    private static volatile Listener[][] global = newListeners();
+    private static final ConcurrentHashMap<NamespacedKey, Listener[][]> byType = new ConcurrentHashMap<>();
+
+    /**
+     * true if any listener is subscribed to the phase, globally or for a type
+     */
+    private static volatile boolean[] listening = new boolean[PHASES.length];
+
+    private EffectLifecycleBus() {
+    }
+
+    /**
+     * subscribe to a phase of every effect
+     *
+     * @param phase    the phase
+     * @param listener the listener
+     */
+    public static synchronized void subscribe(@NotNull Phase phase, @NotNull Listener listener) {
+        global = add(global, phase, listener);
+        updateListening();
+    }
+
+    /**
+     * subscribe to a phase of the effects of one type
+     *
+     * @param type     the effect type key
+     * @param phase    the phase
+     * @param listener the listener
+     */
+    public static synchronized void subscribe(@NotNull NamespacedKey type, @NotNull Phase phase, @NotNull Listener listener) {
+        byType.put(type, add(byType.getOrDefault(type, newListeners()), phase, listener));
+        updateListening();
+    }
+
+    /**
+     * @param phase    the phase
+     * @param listener the listener subscribed to the phase of every effect
+     */
+    public static synchronized void unsubscribe(@NotNull Phase phase, @NotNull Listener listener) {
+        global = remove(global, phase, listener);
+        updateListening();
+    }
+
+    /**
+     * @param type     the effect type key
+     * @param phase    the phase
+     * @param listener the listener subscribed to the phase of the type
+     */
+    public static synchronized void unsubscribe(@NotNull NamespacedKey type, @NotNull Phase phase, @NotNull Listener listener) {
+        Listener[][] listeners = byType.get(type);
+        if (listeners == null) {
+            return;
+        }
+        listeners = remove(listeners, phase, listener);
+        if (isEmpty(listeners)) {
+            byType.remove(type);
+        } else {
+            byType.put(type, listeners);
+        }
+        updateListening();
+    }
+
+    /**
+     * call the listeners of the phase, the global ones first
+     *
+     * @param phase  the phase
+     * @param effect the effect
+     */
+    static void fire(@NotNull Phase phase, @NotNull CustomPotionEffect effect) {
+        if (!listening[phase.ordinal()]) {
+            return;
+        }
+        call(global[phase.ordinal()], effect);
+        Listener[][] listeners = byType.get(effect.getEffectType().getKey());
+        if (listeners != null) {
+            call(listeners[phase.ordinal()], effect);
+        }
+    }
+
+    private static void call(Listener[] listeners, CustomPotionEffect effect) {
+        for (Listener listener : listeners) {
+            try {
+                listener.handle(effect);
+            } catch (Throwable throwable) {
+                CustomPotionAPI.getInstance().getLogger().log(Level.SEVERE, "an effect lifecycle listener threw an exception", throwable);
+            }
+        }
+    }
+
+    private static Listener[][] newListeners() {
+        Listener[][] listeners = new Listener[PHASES.length][];
+        Arrays.fill(listeners, NO_LISTENERS);
+        return listeners;
+    }
+
+    private static Listener[][] add(Listener[][] listeners, Phase phase, Listener listener) {
+        Listener[][] result = listeners.clone();
+        Listener[] ofPhase = listeners[phase.ordinal()];
+        result[phase.ordinal()] = Arrays.copyOf(ofPhase, ofPhase.length + 1);
+        result[phase.ordinal()][ofPhase.length] = listener;
+        return result;
+    }
+
+    private static Listener[][] remove(Listener[][] listeners, Phase phase, Listener listener) {
+        Listener[] ofPhase = listeners[phase.ordinal()];
+        for (int i = 0; i < ofPhase.length; i++) {
+            if (ofPhase[i] != listener) {
+                continue;
+            }
+            Listener[] removed = new Listener[ofPhase.length - 1];
+            System.arraycopy(ofPhase, 0, removed, 0, i);
+            System.arraycopy(ofPhase, i + 1, removed, i, ofPhase.length - i - 1);
+            Listener[][] result = listeners.clone();
+            result[phase.ordinal()] = removed;
+            return result;
+        }
+        return listeners;
+    }
+
+    private static boolean isEmpty(Listener[][] listeners) {
+        for (Listener[] ofPhase : listeners) {
+            if (ofPhase.length > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void updateListening() {
+        boolean[] result = new boolean[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            result[i] = global[i].length > 0;
+        }
+        for (Listener[][] listeners : byType.values()) {
+            for (int i = 0; i < PHASES.length; i++) {
+                result[i] |= listeners[i].length > 0;
+            }
+        }
+        listening = result;
+    }
+}
@@ -0,0 +1,242 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * timing and throughput metrics of the custom potion effects.<br>
+ * records the call count, total and max nanoseconds and a latency histogram
+ * for every effect type and stage, and for every listener handler.<br>
+ * metrics are disabled by default, when disabled the instrumented code only reads one volatile boolean.
+ * use /cpapi stats to see the metrics in game.
+ *
+ * @author Sheepion
+ */
+public final class EffectMetrics {
+    /**
+     * the instrumented stages of an effect
+     */
+    public enum Stage {
+        /**
+         * CustomPotionEffect#apply(LivingEntity), including beforeApply
+         */
+        APPLY,
+        /**
+         * CustomPotionEffectType#beforeApply(LivingEntity, CustomPotionEffectProperty)
+         */
+        BEFORE_APPLY,
+        /**
+         * CustomPotionEffectType#effect(LivingEntity, CustomPotionEffectProperty)
+         */
+        EFFECT,
+        /**
+         * CustomPotionEffect#applyAll(Collection), including beforeApplyBatch.
+         * one call is one batch, not one entity.
+         */
+        APPLY_BATCH,
+        /**
+         * CustomPotionEffectType#beforeApplyBatch(List).
+         * one call is one batch, not one entity.
+         */
+        BEFORE_APPLY_BATCH
+    }
+
+    private static volatile boolean enabled;
+    private static final ConcurrentHashMap<NamespacedKey, Timer[]> effectTimers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Timer> listenerTimers = new ConcurrentHashMap<>();
+    private static final LongAdder budgetOverruns = new LongAdder();
+    private static final LongAdder deferredRuns = new LongAdder();
+
+    private EffectMetrics() {
+    }
+
+    /**
+     * @return true if the metrics are being recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * start or stop recording the metrics, the recorded metrics are kept.
+     *
+     * @param enabled true to record the metrics
+     */
+    public static void setEnabled(boolean enabled) {
+        EffectMetrics.enabled = enabled;
+    }
+
+    /**
+     * remove all the recorded metrics
+     */
+    public static void reset() {
+        effectTimers.clear();
+        listenerTimers.clear();
+        budgetOverruns.reset();
+        deferredRuns.reset();
+    }
+
+    /**
+     * get the start time of a measurement
+     *
+     * @return the current nano time, 0 if the metrics are disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * record a measurement of an effect stage
+     *
+     * @param type  the effect type key
+     * @param stage the stage
+     * @param start the value returned by start()
+     */
+    public static void record(@NotNull NamespacedKey type, @NotNull Stage stage, long start) {
+        if (start == 0L) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        effectTimers.computeIfAbsent(type, key -> newTimers())[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * record a measurement of a listener handler
+     *
+     * @param handler the handler name
+     * @param start   the value returned by start()
+     */
+    public static void recordListener(@NotNull String handler, long start) {
+        if (start == 0L) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        listenerTimers.computeIfAbsent(handler, key -> new Timer()).record(nanos);
+    }
+
+    /**
+     * record a tick that ran out of its budget, see EffectTickEngine#setTickBudget(long).<br>
+     * recorded even if the metrics are disabled.
+     *
+     * @param deferred the number of effects deferred to the next tick
+     */
+    static void recordBudgetOverrun(int deferred) {
+        budgetOverruns.increment();
+        deferredRuns.add(deferred);
+    }
+
+    /**
+     * @return the number of ticks that ran out of their budget
+     */
+    public static long getBudgetOverruns() {
+        return budgetOverruns.sum();
+    }
+
+    /**
+     * @return the number of effect runs deferred to a later tick
+     */
+    public static long getDeferredRuns() {
+        return deferredRuns.sum();
+    }
+
+    /**
+     * @param type  the effect type key
+     * @param stage the stage
+     * @return the timer, null if nothing was recorded
+     */
+    public static @Nullable Timer getTimer(@NotNull NamespacedKey type, @NotNull Stage stage) {
+        Timer[] timers = effectTimers.get(type);
+        return timers == null ? null : timers[stage.ordinal()];
+    }
+
+    /**
+     * @return an unmodifiable live view of the timers of each effect type, indexed by Stage#ordinal()
+     */
+    public static @NotNull Map<NamespacedKey, Timer[]> getEffectTimers() {
+        return Collections.unmodifiableMap(effectTimers);
+    }
+
+    /**
+     * @return an unmodifiable live view of the timers of each listener handler
+     */
+    public static @NotNull Map<String, Timer> getListenerTimers() {
+        return Collections.unmodifiableMap(listenerTimers);
+    }
+
+    private static Timer[] newTimers() {
+        Timer[] timers = new Timer[Stage.values().length];
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new Timer();
+        }
+        return timers;
+    }
+
+    /**
+     * the measurements of one effect stage or listener handler
+     */
+    public static final class Timer {
+        /**
+         * the number of histogram buckets.
+         * bucket i counts the calls that took less than 2^i microseconds, the last bucket counts the rest.
+         */
+        public static final int BUCKETS = 16;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            int bucket = 64 - Long.numberOfLeadingZeros(nanos / 1000L);
+            histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+        }
+
+        /**
+         * @return the number of calls
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return the total time of all the calls in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * @return the longest call in nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * @return the average call in nanoseconds, 0 if there is no call
+         */
+        public long getAverageNanos() {
+            long count = getCount();
+            return count == 0 ? 0 : getTotalNanos() / count;
+        }
+
+        /**
+         * @param bucket the bucket index, less than BUCKETS
+         * @return the number of calls in the bucket
+         */
+        public long getHistogram(int bucket) {
+            return histogram.get(bucket);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static com.sheepion.custompotionapi.CustomPotionManager.getActiveEffectStore;
+
+/**
+ * saves the custom potion effects of players, so they survive server restarts and crashes.<br>
+ * every player with effects has one small file in the EffectCodec format.
+ * the files are written by a single background thread,
+ * the effects of online players are flushed every FLUSH_INTERVAL ticks, and on quit and shutdown.<br>
+ * nothing is loaded on startup, a player's file is read when the player logs in.<br>
+ * the effects of a player who quits are removed from memory once they are encoded,
+ * so offline players' effects only live on disk until the player joins again.
+ *
+ * @author Sheepion
+ */
+public class EffectPersistence implements Listener {
+    /**
+     * the ticks between two flushes of online players' effects
+     */
+    public static final long FLUSH_INTERVAL = 600L;
+
+    private final Plugin plugin;
+    private final Path directory;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CustomPotionAPI Effect Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * the online players that have a file written or loaded in this session
+     */
+    private final Set<UUID> persisted = ConcurrentHashMap.newKeySet();
+
+    /**
+     * the effects read in AsyncPlayerPreLoginEvent, applied when the player joins
+     */
+    private final ConcurrentHashMap<UUID, List<StoredEffect>> preloaded = new ConcurrentHashMap<>();
+    private EffectScheduler.Task flushTask;
+
+    /**
+     * @param plugin    the plugin
+     * @param directory the directory of the effect files
+     */
+    public EffectPersistence(@NotNull Plugin plugin, @NotNull File directory) {
+        this.plugin = plugin;
+        this.directory = directory.toPath();
+    }
+
+    /**
+     * register the listeners and start flushing the effects of online players
+     */
+    public void start() {
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        flushTask = CustomPotionAPI.getEffectScheduler().runTimer(this::flushOnlinePlayers, FLUSH_INTERVAL, FLUSH_INTERVAL);
+    }
+
+    /**
+     * save the effects of the online players, then wait for the files to be written
+     */
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            save(player.getUniqueId());
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("timed out while saving custom potion effects");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * save the current effects of the player in the background.<br>
+     * the file is deleted if the player has no effect.
+     * must be called from the main thread.
+     *
+     * @param uuid the player uuid
+     */
+    public void save(@NotNull UUID uuid) {
+        ArrayList<StoredEffect> effects = new ArrayList<>();
+        for (CustomPotionEffect effect : getActiveEffectStore().getEffects(uuid)) {
+            effects.add(StoredEffect.of(effect));
+        }
+        if (effects.isEmpty()) {
+            if (persisted.remove(uuid)) {
+                writer.execute(() -> delete(uuid));
+            }
+            return;
+        }
+        persisted.add(uuid);
+        byte[] data = EffectCodec.encode(uuid, effects);
+        writer.execute(() -> write(uuid, data));
+    }
+
+    /**
+     * read the saved effects of the player, blocks until the pending writes are done and the file is read.<br>
+     * do not call this from the main thread.
+     *
+     * @param uuid the player uuid
+     * @return the saved effects, null if there is no file or it can not be read
+     */
+    public @Nullable List<StoredEffect> load(@NotNull UUID uuid) {
+        try {
+            return writer.submit(() -> read(uuid)).get();
+        } catch (ExecutionException e) {
+            plugin.getLogger().log(Level.WARNING, "failed to read custom potion effects of " + uuid, e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private List<StoredEffect> read(UUID uuid) {
+        Path file = file(uuid);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return EffectCodec.decode(Files.readAllBytes(file));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "failed to read custom potion effects of " + uuid, e);
+            return null;
+        }
+    }
+
+    private void flushOnlinePlayers() {
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            if (getActiveEffectStore().contains(player.getUniqueId()) || persisted.contains(player.getUniqueId())) {
+                save(player.getUniqueId());
+            }
+        }
+    }
+
+    private Path file(UUID uuid) {
+        return directory.resolve(uuid + ".bin");
+    }
+
+    private void write(UUID uuid, byte[] data) {
+        try {
+            Files.createDirectories(directory);
+            Path temp = directory.resolve(uuid + ".tmp");
+            Files.write(temp, data);
+            Files.move(temp, file(uuid), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "failed to save custom potion effects of " + uuid, e);
+        }
+    }
+
+    private void delete(UUID uuid) {
+        try {
+            Files.deleteIfExists(file(uuid));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "failed to delete custom potion effects of " + uuid, e);
+        }
+    }
+
+    /**
+     * read the player's file off the main thread while the player logs in
+     *
+     * @param event the event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        long start = EffectMetrics.start();
+        try {
+            if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+                return;
+            }
+            List<StoredEffect> effects = load(event.getUniqueId());
+            if (effects != null) {
+                preloaded.put(event.getUniqueId(), effects);
+            }
+        } finally {
+            EffectMetrics.recordListener("persistence onAsyncPlayerPreLogin", start);
+        }
+    }
+
+    /**
+     * apply the saved effects, unless the player still has effects in memory
+     *
+     * @param event the event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        long start = EffectMetrics.start();
+        try {
+            Player player = event.getPlayer();
+            List<StoredEffect> effects = preloaded.remove(player.getUniqueId());
+            if (effects == null || getActiveEffectStore().contains(player.getUniqueId())) {
+                return;
+            }
+            persisted.add(player.getUniqueId());
+            for (StoredEffect storedEffect : effects) {
+                CustomPotionEffect effect = storedEffect.toEffect();
+                if (effect != null) {
+                    effect.resume(player);
+                }
+            }
+        } finally {
+            EffectMetrics.recordListener("persistence onPlayerJoin", start);
+        }
+    }
+
+    /**
+     * save the effects of the player when the player quits, and remove them from memory.
+     *
+     * @param event the event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        long start = EffectMetrics.start();
+        try {
+            UUID uuid = event.getPlayer().getUniqueId();
+            preloaded.remove(uuid);
+            save(uuid);
+            persisted.remove(uuid);
+            //the effects only live on disk until the player joins again, no item or shooter is kept
+            for (CustomPotionEffect effect : getActiveEffectStore().removeAll(uuid)) {
+                effect.pause();
+            }
+        } finally {
+            EffectMetrics.recordListener("persistence onPlayerQuit", start);
+        }
+    }
+}
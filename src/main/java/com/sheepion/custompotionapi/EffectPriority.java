@@ -0,0 +1,27 @@
+package com.sheepion.custompotionapi;
+
+/**
+ * the priority class of an effect type when the effects of a tick do not fit in the tick budget.<br>
+ * due effects run from CRITICAL to LOW, once the budget is used up the rest is deferred to the next tick.
+ * returned by CustomPotionEffectType#priority(), see EffectTickEngine#setTickBudget(long).
+ *
+ * @author Sheepion
+ */
+public enum EffectPriority {
+    /**
+     * always runs on time, even if the budget is used up.
+     */
+    CRITICAL,
+    /**
+     * runs before NORMAL and LOW effects.
+     */
+    HIGH,
+    /**
+     * the default priority.
+     */
+    NORMAL,
+    /**
+     * runs last, deferred first.
+     */
+    LOW
+}
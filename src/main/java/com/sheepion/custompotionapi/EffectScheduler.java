@@ -0,0 +1,98 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * schedules the custom potion effects and the api's own tasks.<br>
+ * EffectTickEngine ticks every effect on the main thread, it is used on plain paper.
+ * RegionizedEffectScheduler ticks every entity's effects on the region thread that owns the entity,
+ * it is used on region threaded servers like folia.<br>
+ * an effect must be scheduled and unscheduled from the thread that owns its entity.
+ *
+ * @author Sheepion
+ */
+public interface EffectScheduler {
+    /**
+     * a task scheduled by the scheduler
+     */
+    interface Task {
+        /**
+         * stop the task, do nothing if the task is already done or cancelled
+         */
+        void cancel();
+    }
+
+    /**
+     * start ticking the scheduled effects
+     *
+     * @param plugin the plugin that owns the tasks
+     */
+    void start(@NotNull Plugin plugin);
+
+    /**
+     * stop ticking the scheduled effects
+     */
+    void stop();
+
+    /**
+     * schedule the effect to run after the delay, and then every check interval ticks.<br>
+     * an effect with a check interval of zero or less only runs once.
+     *
+     * @param effect the effect, its entity must be set
+     * @param delay  the delay in ticks
+     */
+    void schedule(@NotNull CustomPotionEffect effect, int delay);
+
+    /**
+     * schedule all the effects to run after the same delay, and then every check interval ticks.<br>
+     * the effects must not be scheduled yet.
+     *
+     * @param effects the effects, their entities must be set
+     * @param delay   the delay in ticks
+     */
+    void scheduleAll(@NotNull List<CustomPotionEffect> effects, int delay);
+
+    /**
+     * stop running the effect, do nothing if the effect is not scheduled.
+     *
+     * @param effect the effect
+     */
+    void unschedule(@NotNull CustomPotionEffect effect);
+
+    /**
+     * @param effect the effect
+     * @return true if the effect is waiting for its next run or running now
+     */
+    default boolean isScheduled(@NotNull CustomPotionEffect effect) {
+        return effect.ticking;
+    }
+
+    /**
+     * run the task once on the global thread after the delay
+     *
+     * @param task  the task
+     * @param delay the delay in ticks
+     * @return the scheduled task
+     */
+    @NotNull Task runLater(@NotNull Runnable task, long delay);
+
+    /**
+     * run the task on the global thread after the delay, and then every period ticks
+     *
+     * @param task   the task
+     * @param delay  the delay in ticks
+     * @param period the period in ticks
+     * @return the scheduled task
+     */
+    @NotNull Task runTimer(@NotNull Runnable task, long delay, long period);
+
+    /**
+     * run the task once off the server threads
+     *
+     * @param task the task
+     */
+    void runAsync(@NotNull Runnable task);
+}
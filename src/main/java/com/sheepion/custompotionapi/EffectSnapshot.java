@@ -0,0 +1,56 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * an immutable copy of an applied effect and its entity, taken on the thread that ticks the effect.<br>
+ * passed to AsyncCustomPotionEffectType#compute(EffectSnapshot) on a worker thread,
+ * the location is a copy, but its world must not be read or changed off the server threads.
+ *
+ * @param entity        the entity uuid
+ * @param entityType    the entity type
+ * @param location      the entity location
+ * @param health        the entity health
+ * @param maxHealth     the entity max health
+ * @param type          the effect type key
+ * @param duration      the effect's duration
+ * @param restDuration  the effect's rest duration
+ * @param amplifier     the effect's amplifier
+ * @param ambient       the effect's ambient
+ * @param checkInterval the effect's check interval
+ * @author Sheepion
+ */
+public record EffectSnapshot(@NotNull UUID entity, @NotNull EntityType entityType, @NotNull Location location,
+                             double health, double maxHealth, @NotNull NamespacedKey type, int duration,
+                             int restDuration, int amplifier, boolean ambient, int checkInterval) {
+    /**
+     * @param effect the applied effect
+     * @return the snapshot of the effect and its entity
+     */
+    public static @NotNull EffectSnapshot of(@NotNull CustomPotionEffect effect) {
+        return of(effect.getEntity(), effect.getEffectType(), effect.getProperty());
+    }
+
+    /**
+     * @param entity     the entity
+     * @param effectType the effect type
+     * @param property   the property of the effect
+     * @return the snapshot of the effect and the entity
+     */
+    public static @NotNull EffectSnapshot of(@NotNull LivingEntity entity, @NotNull CustomPotionEffectType effectType,
+                                             @NotNull CustomPotionEffectProperty property) {
+        AttributeInstance maxHealth = entity.getAttribute(Attribute.GENERIC_MAX_HEALTH);
+        double health = entity.getHealth();
+        return new EffectSnapshot(entity.getUniqueId(), entity.getType(), entity.getLocation(),
+                health, maxHealth == null ? health : maxHealth.getValue(), effectType.getKey(), property.getDuration(),
+                property.getRestDuration(), property.getAmplifier(), property.isAmbient(), property.getCheckInterval());
+    }
+}
@@ -0,0 +1,322 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * drives every active custom potion effect from one repeating task.<br>
+ * effects are kept in a hashed timing wheel keyed on the tick they are due next,
+ * so scheduling and cancelling an effect are both O(1),
+ * and a tick only touches the effects that are due in that tick.<br>
+ * this is the EffectScheduler of plain paper, all methods must be called from the main thread.
+ * RegionizedEffectScheduler drives one engine per entity with run() instead of starting it.
+ *
+ * @author Sheepion
+ */
+public class EffectTickEngine implements Runnable, EffectScheduler {
+    /**
+     * the default number of buckets in the wheel.
+     * effects with a longer check interval simply stay in their bucket for more than one round.
+     */
+    private static final int WHEEL_SIZE = 512;
+
+    private final Bucket[] wheel;
+    private final int wheelMask;
+
+    /**
+     * the effects that are being run in the current tick, by EffectPriority#ordinal()
+     */
+    private final Bucket[] due = new Bucket[EffectPriority.values().length];
+
+    private long currentTick;
+    private int scheduledEffects;
+
+    /**
+     * the nanoseconds the effects may use per tick, 0 for no limit
+     */
+    private long tickBudget;
+    private int maxDeferTicks = 20;
+    private BukkitTask task;
+    private Plugin plugin;
+
+    /**
+     * create a new tick engine, call start(Plugin) to make it tick.
+     */
+    public EffectTickEngine() {
+        this(WHEEL_SIZE);
+    }
+
+    /**
+     * create a tick engine with a wheel of the size, a small wheel is cheaper to keep
+     * but revisits the effects with long check intervals more often.
+     *
+     * @param wheelSize the number of buckets in the wheel, must be a power of two
+     */
+    EffectTickEngine(int wheelSize) {
+        if (wheelSize <= 0 || (wheelSize & (wheelSize - 1)) != 0) {
+            throw new IllegalArgumentException("the wheel size must be a power of two");
+        }
+        wheel = new Bucket[wheelSize];
+        wheelMask = wheelSize - 1;
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+        for (int i = 0; i < due.length; i++) {
+            due[i] = new Bucket();
+        }
+    }
+
+    /**
+     * start the repeating task of the engine
+     *
+     * @param plugin the plugin that owns the task
+     */
+    @Override
+    public void start(@NotNull Plugin plugin) {
+        if (task != null) {
+            return;
+        }
+        this.plugin = plugin;
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this, 1L, 1L);
+    }
+
+    /**
+     * stop the repeating task of the engine.<br>
+     * the scheduled effects are kept, they will continue when the engine is started again.
+     */
+    @Override
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * @return the number of ticks the engine has run
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * @return the number of effects that are waiting for their next run
+     */
+    public int getScheduledEffects() {
+        return scheduledEffects;
+    }
+
+    /**
+     * @return the nanoseconds the effects may use per tick, 0 for no limit
+     */
+    public long getTickBudget() {
+        return tickBudget;
+    }
+
+    /**
+     * limit the time the effects may use per tick.<br>
+     * when a tick runs out of its budget, the due effects that are left are deferred to the next tick,
+     * except CRITICAL effects and effects that have been deferred for maxDeferTicks.
+     * a deferred effect keeps its due tick, so it still runs duration / check interval times in total.
+     *
+     * @param tickBudget the nanoseconds per tick, 0 for no limit
+     */
+    public void setTickBudget(long tickBudget) {
+        this.tickBudget = Math.max(0, tickBudget);
+    }
+
+    /**
+     * @return the ticks an effect can be deferred before it runs regardless of the budget
+     */
+    public int getMaxDeferTicks() {
+        return maxDeferTicks;
+    }
+
+    /**
+     * @param maxDeferTicks the ticks an effect can be deferred before it runs regardless of the budget
+     */
+    public void setMaxDeferTicks(int maxDeferTicks) {
+        this.maxDeferTicks = Math.max(0, maxDeferTicks);
+    }
+
+    /**
+     * schedule the effect to run after the delay, and then every check interval ticks.<br>
+     * an effect with a check interval of zero or less only runs once.
+     *
+     * @param effect the effect
+     * @param delay  the delay in ticks
+     */
+    @Override
+    public void schedule(@NotNull CustomPotionEffect effect, int delay) {
+        unschedule(effect);
+        effect.ticking = true;
+        link(effect, currentTick + Math.max(1, delay));
+    }
+
+    /**
+     * schedule all the effects to run after the same delay, and then every check interval ticks.<br>
+     * the effects must not be scheduled yet, they are appended to one bucket together.
+     *
+     * @param effects the effects
+     * @param delay   the delay in ticks
+     */
+    @Override
+    public void scheduleAll(@NotNull List<CustomPotionEffect> effects, int delay) {
+        long dueTick = currentTick + Math.max(1, delay);
+        Bucket bucket = wheel[(int) (dueTick & wheelMask)];
+        for (CustomPotionEffect effect : effects) {
+            effect.ticking = true;
+            effect.dueTick = dueTick;
+            bucket.append(effect);
+        }
+        scheduledEffects += effects.size();
+    }
+
+    /**
+     * stop running the effect, do nothing if the effect is not scheduled.
+     *
+     * @param effect the effect
+     */
+    @Override
+    public void unschedule(@NotNull CustomPotionEffect effect) {
+        effect.ticking = false;
+        if (effect.wheelBucket != null) {
+            effect.wheelBucket.unlink(effect);
+            scheduledEffects--;
+        }
+    }
+
+    /**
+     * @param effect the effect
+     * @return true if the effect is waiting for its next run or running now
+     */
+    @Override
+    public boolean isScheduled(@NotNull CustomPotionEffect effect) {
+        return effect.ticking;
+    }
+
+    @Override
+    public @NotNull Task runLater(@NotNull Runnable task, long delay) {
+        return plugin.getServer().getScheduler().runTaskLater(plugin, task, delay)::cancel;
+    }
+
+    @Override
+    public @NotNull Task runTimer(@NotNull Runnable task, long delay, long period) {
+        return plugin.getServer().getScheduler().runTaskTimer(plugin, task, delay, period)::cancel;
+    }
+
+    @Override
+    public void runAsync(@NotNull Runnable task) {
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, task);
+    }
+
+    @Override
+    public void run() {
+        currentTick++;
+        Bucket bucket = wheel[(int) (currentTick & wheelMask)];
+        //move the due effects out first, because an effect may cancel other effects while running
+        CustomPotionEffect effect = bucket.head;
+        while (effect != null) {
+            CustomPotionEffect next = effect.wheelNext;
+            if (effect.dueTick <= currentTick) {
+                bucket.unlink(effect);
+                due[effect.getEffectType().priority().ordinal()].append(effect);
+            }
+            effect = next;
+        }
+        long deadline = tickBudget > 0 ? deadline() : 0;
+        boolean overBudget = false;
+        int deferred = 0;
+        for (int priority = 0; priority < due.length; priority++) {
+            Bucket dueBucket = due[priority];
+            while ((effect = dueBucket.head) != null) {
+                dueBucket.unlink(effect);
+                if (tickBudget > 0 && priority != EffectPriority.CRITICAL.ordinal() && currentTick - effect.dueTick < maxDeferTicks
+                        && (overBudget || (overBudget = System.nanoTime() - deadline > 0))) {
+                    //keep the due tick, the next tick picks the effect up again
+                    wheel[(int) ((currentTick + 1) & wheelMask)].append(effect);
+                    deferred++;
+                    continue;
+                }
+                scheduledEffects--;
+                try {
+                    effect.run();
+                } catch (Throwable throwable) {
+                    //contain the failure to this effect, like a failing bukkit task, and keep running the others
+                    CustomPotionAPI.getInstance().getLogger().log(Level.SEVERE, "custom potion effect "
+                            + effect.getEffectType().getKey() + " threw an exception and was cancelled", throwable);
+                    effect.cancel();
+                    continue;
+                }
+                if (!effect.ticking || effect.wheelBucket != null) {
+                    //cancelled, or already rescheduled while running
+                    continue;
+                }
+                int checkInterval = effect.getCheckInterval();
+                if (checkInterval <= 0) {
+                    //a check interval of zero or less means the effect runs once
+                    effect.expire();
+                    continue;
+                }
+                //a deferred effect catches up with its own cadence
+                link(effect, Math.max(effect.dueTick + checkInterval, currentTick + 1));
+            }
+        }
+        if (deferred > 0) {
+            EffectMetrics.recordBudgetOverrun(deferred);
+        }
+    }
+
+    /**
+     * @return the System#nanoTime() at which the effects of the current tick run out of budget
+     */
+    long deadline() {
+        return System.nanoTime() + tickBudget;
+    }
+
+    private void link(CustomPotionEffect effect, long dueTick) {
+        effect.dueTick = dueTick;
+        wheel[(int) (dueTick & wheelMask)].append(effect);
+        scheduledEffects++;
+    }
+
+    /**
+     * a doubly linked list of effects, the links are stored in the effects themselves.
+     */
+    static final class Bucket {
+        private CustomPotionEffect head;
+        private CustomPotionEffect tail;
+
+        void append(CustomPotionEffect effect) {
+            effect.wheelBucket = this;
+            effect.wheelPrev = tail;
+            effect.wheelNext = null;
+            if (tail == null) {
+                head = effect;
+            } else {
+                tail.wheelNext = effect;
+            }
+            tail = effect;
+        }
+
+        void unlink(CustomPotionEffect effect) {
+            if (effect.wheelPrev == null) {
+                head = effect.wheelNext;
+            } else {
+                effect.wheelPrev.wheelNext = effect.wheelNext;
+            }
+            if (effect.wheelNext == null) {
+                tail = effect.wheelPrev;
+            } else {
+                effect.wheelNext.wheelPrev = effect.wheelPrev;
+            }
+            effect.wheelPrev = null;
+            effect.wheelNext = null;
+            effect.wheelBucket = null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * the numeric ids of the custom potion effect types, stored in the compact potion item tag instead of the key.<br>
+ * an id is assigned the first time a type is written to an item, and it is never changed or reused,
+ * the ids are saved in plugins/CustomPotionAPI/type-ids.yml, items can not be read without that file.
+ * items also store hashOf(key) next to the id, so an item from another server or from a lost id file
+ * is not read as the type that has its id here.<br>
+ * new ids are saved off the calling thread, and on shutdown by flush().
+ * lookups never lock and are safe from any thread.
+ *
+ * @author Sheepion
+ */
+public final class EffectTypeIds {
+    private static final ConcurrentHashMap<NamespacedKey, Integer> ids = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, NamespacedKey> keys = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, Integer> hashes = new ConcurrentHashMap<>();
+    private static final AtomicBoolean saveQueued = new AtomicBoolean();
+    private static final Object saveLock = new Object();
+    private static int nextId = 1;
+    private static volatile File file;
+
+    private EffectTypeIds() {
+    }
+
+    /**
+     * read the saved ids, the ids assigned before are kept and saved to the file too.
+     *
+     * @param idFile the id file
+     */
+    static synchronized void load(@NotNull File idFile) {
+        file = idFile;
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(idFile);
+        //one "<id> <key>" line per type, keys may contain dots so they can not be yaml paths
+        for (String line : config.getStringList("types")) {
+            String[] parts = line.split(" ", 2);
+            NamespacedKey key = parts.length == 2 ? NamespacedKey.fromString(parts[1]) : null;
+            int id;
+            try {
+                id = Integer.parseInt(parts[0]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (key == null || id <= 0) {
+                continue;
+            }
+            ids.put(key, id);
+            hashes.put(id, hashOf(key));
+            keys.put(id, key);
+            nextId = Math.max(nextId, id + 1);
+        }
+        save();
+    }
+
+    /**
+     * get the id of the effect type, assign a new one if the type has none
+     *
+     * @param key the namespaced key of the effect type
+     * @return the id
+     */
+    public static int idOf(@NotNull NamespacedKey key) {
+        Integer id = ids.get(key);
+        return id != null ? id : assign(key);
+    }
+
+    private static synchronized int assign(NamespacedKey key) {
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        id = nextId++;
+        //publish the key first, so an item written with the id can always be read back
+        hashes.put(id, hashOf(key));
+        keys.put(id, key);
+        ids.put(key, id);
+        queueSave();
+        return id;
+    }
+
+    /**
+     * @param key the namespaced key of the effect type
+     * @return the hash of the key that is stored next to its id, the same on every server
+     */
+    public static int hashOf(@NotNull NamespacedKey key) {
+        return key.toString().hashCode();
+    }
+
+    /**
+     * @param id   the id
+     * @param hash the hash of the key stored with the id
+     * @return true if the id belongs to a type here and the hash matches its key
+     */
+    public static boolean matches(int id, int hash) {
+        Integer expected = hashes.get(id);
+        return expected != null && expected == hash;
+    }
+
+    /**
+     * @param id the id
+     * @return the namespaced key of the effect type with the id, null if no type has the id
+     */
+    public static @Nullable NamespacedKey keyOf(int id) {
+        return keys.get(id);
+    }
+
+    /**
+     * save the new ids on an async task, several new ids are saved together.<br>
+     * if the plugin is not enabled, they are saved by flush().
+     */
+    private static void queueSave() {
+        if (!saveQueued.compareAndSet(false, true)) {
+            return;
+        }
+        if (CustomPotionAPI.getInstance() != null && CustomPotionAPI.getInstance().isEnabled()) {
+            CustomPotionAPI.getEffectScheduler().runAsync(EffectTypeIds::save);
+        }
+    }
+
+    /**
+     * save the ids now if new ids are waiting to be saved, called when the plugin is disabled
+     */
+    static void flush() {
+        if (saveQueued.get()) {
+            save();
+        }
+    }
+
+    private static void save() {
+        synchronized (saveLock) {
+            saveQueued.set(false);
+            File idFile = file;
+            if (idFile == null) {
+                return;
+            }
+            YamlConfiguration config = new YamlConfiguration();
+            ArrayList<String> lines = new ArrayList<>();
+            ids.forEach((key, id) -> lines.add(id + " " + key));
+            config.set("types", lines);
+            try {
+                config.save(idFile);
+            } catch (IOException e) {
+                CustomPotionAPI.getInstance().getLogger().log(Level.SEVERE, "failed to save the custom potion effect type ids", e);
+            }
+        }
+    }
+}
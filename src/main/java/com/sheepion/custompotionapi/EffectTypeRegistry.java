@@ -0,0 +1,90 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * all the registered custom potion effect types, keyed by their namespaced key.<br>
+ * the registry is an immutable map that is replaced on every change,
+ * so lookups never lock and are safe from any thread.<br>
+ * use CustomPotionManager#registerPotionEffectType(CustomPotionEffectType) to register a type.
+ *
+ * @author Sheepion
+ */
+public final class EffectTypeRegistry {
+    private static volatile Map<NamespacedKey, CustomPotionEffectType> types = Map.of();
+
+    private EffectTypeRegistry() {
+    }
+
+    /**
+     * get the registered effect type with the key
+     *
+     * @param key the namespaced key of the effect type
+     * @return the effect type, null if not registered
+     */
+    public static @Nullable CustomPotionEffectType get(@Nullable NamespacedKey key) {
+        if (key == null) {
+            return null;
+        }
+        return types.get(key);
+    }
+
+    /**
+     * @param key the namespaced key of the effect type
+     * @return true if an effect type is registered with the key
+     */
+    public static boolean contains(@Nullable NamespacedKey key) {
+        return get(key) != null;
+    }
+
+    /**
+     * get an immutable snapshot of the registry, later registrations will not change it.
+     *
+     * @return all the registered effect types
+     */
+    public static @NotNull Map<NamespacedKey, CustomPotionEffectType> snapshot() {
+        return types;
+    }
+
+    /**
+     * add all the effect types with one copy of the registry, replacing the types registered with the same keys.<br>
+     * if the collection has several types with the same key, the last one is registered.
+     *
+     * @param types the effect types
+     * @return the replaced effect types by key, types added by the collection itself are not included
+     */
+    static synchronized @NotNull Map<NamespacedKey, CustomPotionEffectType> registerAll(@NotNull Collection<? extends CustomPotionEffectType> types) {
+        HashMap<NamespacedKey, CustomPotionEffectType> copy = new HashMap<>(EffectTypeRegistry.types);
+        HashMap<NamespacedKey, CustomPotionEffectType> previous = new HashMap<>();
+        for (CustomPotionEffectType type : types) {
+            CustomPotionEffectType replaced = copy.put(type.getKey(), type);
+            if (replaced != null && EffectTypeRegistry.types.get(type.getKey()) == replaced) {
+                previous.put(type.getKey(), replaced);
+            }
+        }
+        EffectTypeRegistry.types = Map.copyOf(copy);
+        return previous;
+    }
+
+    /**
+     * remove the effect type with the key
+     *
+     * @param key the namespaced key of the effect type
+     * @return the removed effect type, null if there wasn't one
+     */
+    static synchronized @Nullable CustomPotionEffectType unregister(@NotNull NamespacedKey key) {
+        if (!types.containsKey(key)) {
+            return null;
+        }
+        HashMap<NamespacedKey, CustomPotionEffectType> copy = new HashMap<>(types);
+        CustomPotionEffectType previous = copy.remove(key);
+        types = Map.copyOf(copy);
+        return previous;
+    }
+}
@@ -0,0 +1,200 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.Chunk;
+import org.bukkit.entity.AreaEffectCloud;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.sheepion.custompotionapi.CustomPotionManager.getActiveEffectStore;
+import static com.sheepion.custompotionapi.CustomPotionManager.getAreaEffectCloudTracker;
+
+/**
+ * the effects of entities in unloaded chunks.<br>
+ * when a chunk unloads, the effects of its non-player entities are paused and parked in a bucket of the chunk,
+ * they do not tick and keep their rest duration. when the chunk loads again, only its bucket is resumed,
+ * and the effects are applied again to the loaded entity instances.
+ * the effects carried by tracked area effect clouds are parked the same way.<br>
+ * only the primitive state of the effects is parked, like for offline players, so no entity, item or shooter is kept.
+ * buckets are dropped when their world unloads, or when their chunk did not load again within the max age.<br>
+ * parked effects are not saved, they are lost when the server stops.
+ *
+ * @author Sheepion
+ */
+public class ParkedEffects {
+    /**
+     * the default milliseconds a bucket is kept
+     */
+    public static final long DEFAULT_MAX_AGE = 60 * 60 * 1000L;
+
+    private final ConcurrentHashMap<ChunkKey, Bucket> chunks = new ConcurrentHashMap<>();
+    private volatile long maxAge = DEFAULT_MAX_AGE;
+    private volatile long nextPrune;
+
+    /**
+     * @return the milliseconds a bucket is kept before its effects are dropped
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * @param maxAge the milliseconds a bucket is kept before its effects are dropped
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = Math.max(0, maxAge);
+    }
+
+    /**
+     * pause and park the effects of the unloading entities
+     *
+     * @param chunk    the unloading chunk
+     * @param entities the entities of the chunk
+     */
+    public void park(@NotNull Chunk chunk, @NotNull List<Entity> entities) {
+        long now = System.currentTimeMillis();
+        if (now >= nextPrune) {
+            //look at the old buckets at most once a minute
+            nextPrune = now + 60_000L;
+            prune(now);
+        }
+        Bucket bucket = null;
+        for (Entity entity : entities) {
+            if (entity instanceof Player) {
+                continue;
+            }
+            if (entity instanceof AreaEffectCloud) {
+                //the cloud is untracked when it is removed from the world, keep its effects until it comes back
+                List<CustomPotionEffect> effects = getAreaEffectCloudTracker().getEffects(entity.getUniqueId());
+                if (!effects.isEmpty()) {
+                    bucket = bucket == null ? new Bucket(now) : bucket;
+                    bucket.clouds.put(entity.getUniqueId(), store(effects));
+                }
+                continue;
+            }
+            if (!getActiveEffectStore().contains(entity.getUniqueId())) {
+                continue;
+            }
+            List<CustomPotionEffect> effects = getActiveEffectStore().removeAll(entity.getUniqueId());
+            List<StoredEffect> stored = store(effects);
+            for (CustomPotionEffect effect : effects) {
+                effect.pause();
+            }
+            bucket = bucket == null ? new Bucket(now) : bucket;
+            bucket.entities.put(entity.getUniqueId(), stored);
+        }
+        if (bucket != null) {
+            chunks.merge(ChunkKey.of(chunk), bucket, Bucket::merge);
+        }
+    }
+
+    /**
+     * resume the parked effects of the chunk on the loaded entities.<br>
+     * effects of entities that did not come back with the chunk are dropped.
+     *
+     * @param chunk    the loaded chunk
+     * @param entities the entities of the chunk
+     */
+    public void resume(@NotNull Chunk chunk, @NotNull List<Entity> entities) {
+        Bucket bucket = chunks.remove(ChunkKey.of(chunk));
+        if (bucket == null) {
+            return;
+        }
+        for (Entity entity : entities) {
+            if (entity instanceof AreaEffectCloud cloud) {
+                List<StoredEffect> stored = bucket.clouds.get(entity.getUniqueId());
+                if (stored == null) {
+                    continue;
+                }
+                ArrayList<CustomPotionEffect> effects = new ArrayList<>(stored.size());
+                for (StoredEffect storedEffect : stored) {
+                    CustomPotionEffect effect = storedEffect.toEffect();
+                    if (effect != null) {
+                        effects.add(effect);
+                    }
+                }
+                if (!effects.isEmpty()) {
+                    getAreaEffectCloudTracker().track(cloud, effects);
+                }
+                continue;
+            }
+            List<StoredEffect> stored = bucket.entities.get(entity.getUniqueId());
+            if (stored == null || !(entity instanceof LivingEntity livingEntity)) {
+                continue;
+            }
+            for (StoredEffect storedEffect : stored) {
+                CustomPotionEffect effect = storedEffect.toEffect();
+                if (effect != null) {
+                    effect.resume(livingEntity);
+                }
+            }
+        }
+    }
+
+    /**
+     * drop the parked effects of the world, used when the world unloads
+     *
+     * @param world the world uid
+     */
+    public void dropWorld(@NotNull UUID world) {
+        chunks.keySet().removeIf(key -> key.world().equals(world));
+    }
+
+    /**
+     * drop the buckets that are older than the max age
+     *
+     * @param now the current time in milliseconds
+     */
+    private void prune(long now) {
+        long oldest = now - maxAge;
+        chunks.values().removeIf(bucket -> bucket.parkedAt < oldest);
+    }
+
+    private static List<StoredEffect> store(List<CustomPotionEffect> effects) {
+        ArrayList<StoredEffect> stored = new ArrayList<>(effects.size());
+        for (CustomPotionEffect effect : effects) {
+            stored.add(StoredEffect.of(effect));
+        }
+        return stored;
+    }
+
+    /**
+     * @return the number of chunks with parked effects
+     */
+    public int getParkedChunks() {
+        return chunks.size();
+    }
+
+    private record ChunkKey(UUID world, long chunk) {
+        static ChunkKey of(Chunk chunk) {
+            return new ChunkKey(chunk.getWorld().getUID(), chunk.getChunkKey());
+        }
+    }
+
+    /**
+     * the parked effects of one chunk
+     */
+    private static final class Bucket {
+        private final HashMap<UUID, List<StoredEffect>> entities = new HashMap<>();
+        private final HashMap<UUID, List<StoredEffect>> clouds = new HashMap<>();
+        private long parkedAt;
+
+        Bucket(long parkedAt) {
+            this.parkedAt = parkedAt;
+        }
+
+        Bucket merge(Bucket other) {
+            entities.putAll(other.entities);
+            clouds.putAll(other.clouds);
+            parkedAt = Math.max(parkedAt, other.parkedAt);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * a bounded cache of decoded custom potion items.<br>
+ * the key is the compact signature of the values stored in the potion's persistent data container,
+ * the value is the resolved effect type and its properties,
+ * so the same potion is only parsed and resolved once.<br>
+ * the least recently used entry is evicted when the cache is full.
+ *
+ * @author Sheepion
+ */
+public class PotionDecodeCache {
+    /**
+     * the default maximum number of entries
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final int maxSize;
+    private final LinkedHashMap<Signature, DecodedPotion> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of entries
+     */
+    public PotionDecodeCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Signature, DecodedPotion> eldest) {
+                return size() > PotionDecodeCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * get the decoded potion with the signature
+     *
+     * @param signature the signature of the potion's data
+     * @return the decoded potion, null if not cached
+     */
+    public synchronized @Nullable DecodedPotion get(@NotNull Signature signature) {
+        DecodedPotion decoded = entries.get(signature);
+        if (decoded == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return decoded;
+    }
+
+    /**
+     * cache the decoded potion
+     *
+     * @param signature the signature of the potion's data
+     * @param decoded   the decoded potion
+     */
+    public synchronized void put(@NotNull Signature signature, @NotNull DecodedPotion decoded) {
+        entries.put(signature, decoded);
+    }
+
+    /**
+     * remove all the entries, the counters are kept.<br>
+     * called when an effect type is registered or unregistered.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the maximum number of entries
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of lookups that found an entry
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that found nothing
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * reset the hit and miss counters
+     */
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * the raw values stored in a custom potion's persistent data container, see PotionItemFormat
+     *
+     * @param typeId        the effect type id, see EffectTypeIds
+     * @param duration      the duration
+     * @param amplifier     the amplifier
+     * @param checkInterval the check interval
+     * @param delay         the delay
+     */
+    public record Signature(int typeId, int duration, int amplifier, int checkInterval, int delay) {
+    }
+
+    /**
+     * a decoded custom potion
+     *
+     * @param type          the resolved effect type
+     * @param duration      the duration
+     * @param amplifier     the amplifier
+     * @param checkInterval the check interval
+     * @param delay         the delay
+     */
+    public record DecodedPotion(@NotNull CustomPotionEffectType type, int duration, int amplifier, int checkInterval,
+                                int delay) {
+        /**
+         * @return the namespaced key of the effect type
+         */
+        public @NotNull NamespacedKey key() {
+            return type.getKey();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static com.sheepion.custompotionapi.PropertyKey.*;
+
+/**
+ * the way the custom potion effect is stored in a potion item's persistent data container.<br>
+ * the effect is stored as one int array under PropertyKey#EFFECT_DATA:
+ * [VERSION, type id, type key hash, duration, amplifier, check interval, delay], the type id and hash come from EffectTypeIds.
+ * an item whose hash does not match the key of its id here is not read.<br>
+ * items written by older versions store the values under five keys, the type as a string.
+ * they can still be read, and they are rewritten in the compact format by migrate(ItemStack),
+ * which is called when a player holds the item.
+ *
+ * @author Sheepion
+ */
+public final class PotionItemFormat {
+    /**
+     * the version of the compact format
+     */
+    public static final int VERSION = 1;
+
+    private static final int LENGTH = 7;
+
+    private PotionItemFormat() {
+    }
+
+    /**
+     * write the effect to the container in the compact format
+     *
+     * @param pdc      the persistent data container of the item
+     * @param type     the effect type key
+     * @param property the potion property
+     */
+    public static void write(@NotNull PersistentDataContainer pdc, @NotNull NamespacedKey type, @NotNull CustomPotionEffectProperty property) {
+        pdc.set(EFFECT_DATA, PersistentDataType.INTEGER_ARRAY, encode(EffectTypeIds.idOf(type), property.getDuration(),
+                property.getAmplifier(), property.getCheckInterval(), property.getDelay()));
+    }
+
+    private static int[] encode(int typeId, int duration, int amplifier, int checkInterval, int delay) {
+        NamespacedKey key = EffectTypeIds.keyOf(typeId);
+        return new int[]{VERSION, typeId, key == null ? 0 : EffectTypeIds.hashOf(key), duration, amplifier, checkInterval, delay};
+    }
+
+    /**
+     * read the stored values from the container, in the compact or the legacy format
+     *
+     * @param pdc the persistent data container of the item
+     * @return the stored values, null if the item is not a custom potion, its type id is unknown or belongs to another type here,
+     * or it is in the legacy format and its type is not registered
+     */
+    public static @Nullable PotionDecodeCache.Signature read(@NotNull PersistentDataContainer pdc) {
+        int[] data = pdc.get(EFFECT_DATA, PersistentDataType.INTEGER_ARRAY);
+        if (data != null) {
+            if (data.length < LENGTH || data[0] != VERSION || !EffectTypeIds.matches(data[1], data[2])) {
+                return null;
+            }
+            return new PotionDecodeCache.Signature(data[1], data[3], data[4], data[5], data[6]);
+        }
+        String typeKey = pdc.get(EFFECT_TYPE, PersistentDataType.STRING);
+        if (typeKey == null) {
+            return null;
+        }
+        //only give registered types an id, so unknown legacy items do not fill the id file
+        NamespacedKey key = NamespacedKey.fromString(typeKey);
+        if (key == null || !EffectTypeRegistry.contains(key)) {
+            return null;
+        }
+        return new PotionDecodeCache.Signature(EffectTypeIds.idOf(key),
+                pdc.getOrDefault(EFFECT_DURATION, PersistentDataType.INTEGER, 0),
+                pdc.getOrDefault(EFFECT_AMPLIFIER, PersistentDataType.INTEGER, 0),
+                pdc.getOrDefault(EFFECT_CHECK_INTERVAL, PersistentDataType.INTEGER, 20),
+                pdc.getOrDefault(EFFECT_DELAY, PersistentDataType.INTEGER, 0));
+    }
+
+    /**
+     * @param material the item material
+     * @return true if items of the material can be custom potions
+     */
+    public static boolean isPotionMaterial(@NotNull Material material) {
+        return material == Material.POTION || material == Material.SPLASH_POTION || material == Material.LINGERING_POTION;
+    }
+
+    /**
+     * rewrite a legacy custom potion item in the compact format.<br>
+     * items that are not potions are skipped without reading their meta.
+     *
+     * @param item the item, changed in place
+     * @return true if the item was migrated, false if it is not a legacy custom potion of a registered type
+     */
+    public static boolean migrate(@NotNull ItemStack item) {
+        if (!isPotionMaterial(item.getType())) {
+            return false;
+        }
+        ItemMeta meta = item.getItemMeta();
+        if (meta == null) {
+            return false;
+        }
+        PersistentDataContainer pdc = meta.getPersistentDataContainer();
+        if (!pdc.has(EFFECT_TYPE, PersistentDataType.STRING)) {
+            return false;
+        }
+        PotionDecodeCache.Signature signature = read(pdc);
+        if (signature == null) {
+            return false;
+        }
+        pdc.remove(EFFECT_TYPE);
+        pdc.remove(EFFECT_DURATION);
+        pdc.remove(EFFECT_AMPLIFIER);
+        pdc.remove(EFFECT_CHECK_INTERVAL);
+        pdc.remove(EFFECT_DELAY);
+        pdc.set(EFFECT_DATA, PersistentDataType.INTEGER_ARRAY, encode(signature.typeId(),
+                signature.duration(), signature.amplifier(), signature.checkInterval(), signature.delay()));
+        item.setItemMeta(meta);
+        return true;
+    }
+}
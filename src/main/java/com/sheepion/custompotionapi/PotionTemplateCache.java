@@ -0,0 +1,108 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * a bounded cache of pre-built custom potion items.<br>
+ * every unique (material, type, duration, amplifier, check interval, delay) combination is built once,
+ * CustomPotionManager#getPotion(...) then hands out clones of the template.<br>
+ * the least recently used template is evicted when the cache is full.
+ *
+ * @author Sheepion
+ */
+public class PotionTemplateCache {
+    /**
+     * the default maximum number of templates
+     */
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, ItemStack> templates;
+
+    /**
+     * @param maxSize the maximum number of templates
+     */
+    public PotionTemplateCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.templates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ItemStack> eldest) {
+                return size() > PotionTemplateCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * get a copy of the template
+     *
+     * @param key the template key
+     * @return a new copy of the template, null if not cached
+     */
+    public synchronized @Nullable ItemStack get(@NotNull Key key) {
+        ItemStack template = templates.get(key);
+        return template == null ? null : template.clone();
+    }
+
+    /**
+     * cache a copy of the item as the template
+     *
+     * @param key  the template key
+     * @param item the built item
+     */
+    public synchronized void put(@NotNull Key key, @NotNull ItemStack item) {
+        templates.put(key, item.clone());
+    }
+
+    /**
+     * remove all the templates of the effect type
+     *
+     * @param type the namespaced key of the effect type
+     */
+    public synchronized void invalidate(@NotNull NamespacedKey type) {
+        templates.keySet().removeIf(key -> key.type().equals(type));
+    }
+
+    /**
+     * remove all the templates
+     */
+    public synchronized void clear() {
+        templates.clear();
+    }
+
+    /**
+     * @return the number of cached templates
+     */
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    /**
+     * the values that decide how a custom potion item looks like
+     *
+     * @param material      the potion material
+     * @param type          the effect type key
+     * @param duration      the duration
+     * @param amplifier     the amplifier
+     * @param checkInterval the check interval
+     * @param delay         the delay
+     */
+    public record Key(@NotNull Material material, @NotNull NamespacedKey type, int duration, int amplifier,
+                      int checkInterval, int delay) {
+        /**
+         * @param material the potion material
+         * @param type     the effect type key
+         * @param property the potion property
+         * @return the template key
+         */
+        public static @NotNull Key of(@NotNull Material material, @NotNull NamespacedKey type, @NotNull CustomPotionEffectProperty property) {
+            return new Key(material, type, property.getDuration(), property.getAmplifier(), property.getCheckInterval(), property.getDelay());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.sheepion.custompotionapi;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.translation.GlobalTranslator;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * a bounded cache of the display names and lore of custom potion items.<br>
+ * the text of every unique (type, material, amplifier, duration, check interval, delay) combination is built once by the effect type,
+ * and once more for every locale it is translated to by the GlobalTranslator.
+ * the least recently used text is evicted when the cache is full.<br>
+ * effect types whose text depends on anything else should return false from CustomPotionEffectType#cachePotionItem(),
+ * their text is never cached.
+ *
+ * @author Sheepion
+ */
+public class PotionTextRenderer {
+    /**
+     * the default maximum number of cached texts
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, RenderedText> texts;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of cached texts
+     */
+    public PotionTextRenderer(int maxSize) {
+        this.maxSize = maxSize;
+        this.texts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, RenderedText> eldest) {
+                return size() > PotionTextRenderer.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * get the display name and lore of the potion item
+     *
+     * @param effectType the effect type
+     * @param material   the potion material
+     * @param property   the potion property
+     * @return the text
+     */
+    public @NotNull RenderedText render(@NotNull CustomPotionEffectType effectType, @NotNull Material material, @NotNull CustomPotionEffectProperty property) {
+        return render(effectType, material, property, null);
+    }
+
+    /**
+     * get the display name and lore of the potion item, translated to the locale
+     *
+     * @param effectType the effect type
+     * @param material   the potion material
+     * @param property   the potion property
+     * @param locale     the locale, null to not translate
+     * @return the text
+     */
+    public @NotNull RenderedText render(@NotNull CustomPotionEffectType effectType, @NotNull Material material,
+                                        @NotNull CustomPotionEffectProperty property, @Nullable Locale locale) {
+        if (!effectType.cachePotionItem()) {
+            RenderedText text = build(effectType, material, property);
+            return locale == null ? text : text.translate(locale);
+        }
+        Key key = new Key(effectType.getKey(), material, property.getAmplifier(), property.getDuration(),
+                property.getCheckInterval(), property.getDelay(), locale);
+        RenderedText text = get(key);
+        if (text != null) {
+            return text;
+        }
+        misses.increment();
+        text = locale == null ? build(effectType, material, property) : render(effectType, material, property, null).translate(locale);
+        synchronized (this) {
+            texts.put(key, text);
+        }
+        return text;
+    }
+
+    private synchronized RenderedText get(Key key) {
+        RenderedText text = texts.get(key);
+        if (text != null) {
+            hits.increment();
+        }
+        return text;
+    }
+
+    private static RenderedText build(CustomPotionEffectType effectType, Material material, CustomPotionEffectProperty property) {
+        if (material == Material.SPLASH_POTION) {
+            return RenderedText.of(effectType.splashPotionDisplayName(property), effectType.splashPotionLore(property));
+        }
+        if (material == Material.LINGERING_POTION) {
+            return RenderedText.of(effectType.lingeringPotionDisplayName(property), effectType.lingeringPotionLore(property));
+        }
+        return RenderedText.of(effectType.potionDisplayName(property), effectType.potionLore(property));
+    }
+
+    /**
+     * remove all the texts of the effect type
+     *
+     * @param type the namespaced key of the effect type
+     */
+    public synchronized void invalidate(@NotNull NamespacedKey type) {
+        texts.keySet().removeIf(key -> key.type().equals(type));
+    }
+
+    /**
+     * remove all the texts
+     */
+    public synchronized void clear() {
+        texts.clear();
+    }
+
+    /**
+     * @return the number of cached texts
+     */
+    public synchronized int size() {
+        return texts.size();
+    }
+
+    /**
+     * @return the number of renders that used a cached text
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of renders that built the text
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * the same inputs as PotionTemplateCache, so both caches honor the same cachePotionItem() contract
+     */
+    private record Key(NamespacedKey type, Material material, int amplifier, int duration, int checkInterval, int delay,
+                       Locale locale) {
+    }
+
+    /**
+     * the display name and lore of a potion item, shared by every item with the same text
+     *
+     * @param displayName the display name, null for the default name
+     * @param lore        the unmodifiable lore, null for no lore
+     */
+    public record RenderedText(@Nullable Component displayName, @Nullable List<Component> lore) {
+        static RenderedText of(Component displayName, List<Component> lore) {
+            return new RenderedText(displayName, lore == null ? null : List.copyOf(lore));
+        }
+
+        RenderedText translate(Locale locale) {
+            Component translatedName = displayName == null ? null : GlobalTranslator.render(displayName, locale);
+            if (lore == null) {
+                return new RenderedText(translatedName, null);
+            }
+            ArrayList<Component> translatedLore = new ArrayList<>(lore.size());
+            for (Component line : lore) {
+                translatedLore.add(GlobalTranslator.render(line, locale));
+            }
+            return new RenderedText(translatedName, List.copyOf(translatedLore));
+        }
+    }
+}
@@ -9,23 +9,27 @@ import org.bukkit.NamespacedKey;
  */
 public class PropertyKey {
     /**
-     * the namespaced key of the potion effect's type
+     * the namespaced key of the compact potion data, see PotionItemFormat
+     */
+    public static final NamespacedKey EFFECT_DATA = new NamespacedKey(CustomPotionAPI.getInstance(), "custom_potion_effect");
+    /**
+     * the namespaced key of the potion effect's type, only used by items written before the compact format
      */
     public static final NamespacedKey EFFECT_TYPE = new NamespacedKey(CustomPotionAPI.getInstance(), "custom_potion_effect_type");
     /**
-     * the namespaced key of the potion effect's duration
+     * the namespaced key of the potion effect's duration, only used by items written before the compact format
      */
     public static final NamespacedKey EFFECT_DURATION = new NamespacedKey(CustomPotionAPI.getInstance(), "custom_potion_effect_duration");
     /**
-     * the namespaced key of the potion effect's check interval
+     * the namespaced key of the potion effect's check interval, only used by items written before the compact format
      */
     public static final NamespacedKey EFFECT_CHECK_INTERVAL = new NamespacedKey(CustomPotionAPI.getInstance(), "custom_potion_effect_check_interval");
     /**
-     * the namespaced key of the potion effect's amplifier
+     * the namespaced key of the potion effect's amplifier, only used by items written before the compact format
      */
     public static final NamespacedKey EFFECT_AMPLIFIER = new NamespacedKey(CustomPotionAPI.getInstance(), "custom_potion_effect_amplifier");
     /**
-     * the namespaced key of the potion effect's delay
+     * the namespaced key of the potion effect's delay, only used by items written before the compact format
      */
     public static final NamespacedKey EFFECT_DELAY = new NamespacedKey(CustomPotionAPI.getInstance(), "custom_potion_effect_delay");
 }
@@ -0,0 +1,272 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * the EffectScheduler of region threaded servers like folia.<br>
+ * every entity with scheduled effects gets its own EffectTickEngine with a tiny wheel,
+ * which is run every tick by a repeating task on the entity's scheduler,
+ * so an entity's effects always run on the region thread that owns the entity,
+ * and the effects of different regions run in parallel.
+ * the task of an entity is cancelled when its last effect is unscheduled.<br>
+ * the tick budget is shared by all the entities ticked on one region thread in the same tick.<br>
+ * the folia schedulers are called by reflection, so the api still compiles against the paper api.
+ *
+ * @author Sheepion
+ */
+public class RegionizedEffectScheduler implements EffectScheduler {
+    private static final String REGIONIZED_SERVER = "io.papermc.paper.threadedregions.RegionizedServer";
+
+    /**
+     * the wheel size of an entity's engine, an entity only has a few effects
+     */
+    private static final int ENTITY_WHEEL_SIZE = 16;
+
+    /**
+     * the tick and the budget deadline of the region thread, [tick, deadline]
+     */
+    private static final ThreadLocal<long[]> regionDeadlines = ThreadLocal.withInitial(() -> new long[]{-1, 0});
+
+    private final ConcurrentHashMap<UUID, EntityTicker> tickers = new ConcurrentHashMap<>();
+    private Plugin plugin;
+    private volatile long tickBudget;
+    private volatile int maxDeferTicks = 20;
+
+    private final Method getEntityScheduler;
+    private final Method entityRunAtFixedRate;
+    private final Method getGlobalRegionScheduler;
+    private final Method globalRunDelayed;
+    private final Method globalRunAtFixedRate;
+    private final Method getAsyncScheduler;
+    private final Method asyncRunNow;
+    private final Method cancelTask;
+
+    /**
+     * look up the folia schedulers
+     *
+     * @throws IllegalStateException if the server is not region threaded
+     */
+    public RegionizedEffectScheduler() {
+        try {
+            Class<?> entityScheduler = Class.forName("io.papermc.paper.threadedregions.scheduler.EntityScheduler");
+            Class<?> globalScheduler = Class.forName("io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler");
+            Class<?> asyncScheduler = Class.forName("io.papermc.paper.threadedregions.scheduler.AsyncScheduler");
+            Class<?> scheduledTask = Class.forName("io.papermc.paper.threadedregions.scheduler.ScheduledTask");
+            getEntityScheduler = Entity.class.getMethod("getScheduler");
+            entityRunAtFixedRate = entityScheduler.getMethod("runAtFixedRate", Plugin.class, Consumer.class, Runnable.class, long.class, long.class);
+            getGlobalRegionScheduler = Server.class.getMethod("getGlobalRegionScheduler");
+            globalRunDelayed = globalScheduler.getMethod("runDelayed", Plugin.class, Consumer.class, long.class);
+            globalRunAtFixedRate = globalScheduler.getMethod("runAtFixedRate", Plugin.class, Consumer.class, long.class, long.class);
+            getAsyncScheduler = Server.class.getMethod("getAsyncScheduler");
+            asyncRunNow = asyncScheduler.getMethod("runNow", Plugin.class, Consumer.class);
+            cancelTask = scheduledTask.getMethod("cancel");
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new IllegalStateException("the server is not region threaded", e);
+        }
+    }
+
+    /**
+     * @return true if the server is region threaded
+     */
+    public static boolean isSupported() {
+        try {
+            Class.forName(REGIONIZED_SERVER);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void start(@NotNull Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * cancel the tasks of all the entities.<br>
+     * the scheduled effects are kept, but they will not run again.
+     */
+    @Override
+    public void stop() {
+        for (EntityTicker ticker : tickers.values()) {
+            ticker.cancel();
+        }
+        tickers.clear();
+    }
+
+    @Override
+    public void schedule(@NotNull CustomPotionEffect effect, int delay) {
+        EntityTicker ticker = ticker(effect.getEntity());
+        if (ticker != null) {
+            ticker.engine.schedule(effect, delay);
+        }
+    }
+
+    @Override
+    public void scheduleAll(@NotNull List<CustomPotionEffect> effects, int delay) {
+        HashMap<Entity, List<CustomPotionEffect>> byEntity = new HashMap<>();
+        for (CustomPotionEffect effect : effects) {
+            byEntity.computeIfAbsent(effect.getEntity(), key -> new ArrayList<>(1)).add(effect);
+        }
+        byEntity.forEach((entity, entityEffects) -> {
+            EntityTicker ticker = ticker(entity);
+            if (ticker != null) {
+                ticker.engine.scheduleAll(entityEffects, delay);
+            }
+        });
+    }
+
+    @Override
+    public void unschedule(@NotNull CustomPotionEffect effect) {
+        EntityTicker ticker = effect.getEntity() == null ? null : tickers.get(effect.getEntity().getUniqueId());
+        if (ticker == null) {
+            effect.ticking = false;
+            return;
+        }
+        ticker.engine.unschedule(effect);
+    }
+
+    /**
+     * limit the time the effects may use per tick on each region thread, see EffectTickEngine#setTickBudget(long)
+     *
+     * @param tickBudget the nanoseconds per tick, 0 for no limit
+     */
+    public void setTickBudget(long tickBudget) {
+        this.tickBudget = Math.max(0, tickBudget);
+    }
+
+    /**
+     * @param maxDeferTicks the ticks an effect can be deferred before it runs regardless of the budget
+     */
+    public void setMaxDeferTicks(int maxDeferTicks) {
+        this.maxDeferTicks = Math.max(0, maxDeferTicks);
+    }
+
+    /**
+     * @return the number of entities that have a ticking task
+     */
+    public int getTickingEntities() {
+        return tickers.size();
+    }
+
+    /**
+     * get the ticker of the entity, start it if the entity has none
+     *
+     * @param entity the entity
+     * @return the ticker, null if the entity is already removed
+     */
+    private EntityTicker ticker(Entity entity) {
+        return tickers.computeIfAbsent(entity.getUniqueId(), uuid -> {
+            EntityTicker ticker = new EntityTicker(uuid);
+            Consumer<Object> tick = ticker::tick;
+            Object task = invoke(entityRunAtFixedRate, invoke(getEntityScheduler, entity), plugin, tick, (Runnable) ticker::retire, 1L, 1L);
+            if (task == null) {
+                return null;
+            }
+            ticker.task = task;
+            return ticker;
+        });
+    }
+
+    /**
+     * the deadline of the current tick on this region thread, started by the first entity ticked in the tick
+     */
+    private static long regionDeadline(long budget) {
+        long[] deadline = regionDeadlines.get();
+        long tick = Bukkit.getCurrentTick();
+        if (deadline[0] != tick) {
+            deadline[0] = tick;
+            deadline[1] = System.nanoTime() + budget;
+        }
+        return deadline[1];
+    }
+
+    @Override
+    public @NotNull Task runLater(@NotNull Runnable task, long delay) {
+        Consumer<Object> run = scheduledTask -> task.run();
+        Object scheduledTask = invoke(globalRunDelayed, invoke(getGlobalRegionScheduler, plugin.getServer()), plugin, run, Math.max(1L, delay));
+        return () -> invoke(cancelTask, scheduledTask);
+    }
+
+    @Override
+    public @NotNull Task runTimer(@NotNull Runnable task, long delay, long period) {
+        Consumer<Object> run = scheduledTask -> task.run();
+        Object scheduledTask = invoke(globalRunAtFixedRate, invoke(getGlobalRegionScheduler, plugin.getServer()), plugin, run, Math.max(1L, delay), period);
+        return () -> invoke(cancelTask, scheduledTask);
+    }
+
+    @Override
+    public void runAsync(@NotNull Runnable task) {
+        Consumer<Object> run = scheduledTask -> task.run();
+        invoke(asyncRunNow, invoke(getAsyncScheduler, plugin.getServer()), plugin, run);
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * the tick engine and the repeating task of one entity
+     */
+    private final class EntityTicker {
+        private final UUID uuid;
+        private final EffectTickEngine engine = new EffectTickEngine(ENTITY_WHEEL_SIZE) {
+            @Override
+            long deadline() {
+                return regionDeadline(getTickBudget());
+            }
+        };
+        private Object task;
+
+        EntityTicker(UUID uuid) {
+            this.uuid = uuid;
+        }
+
+        void tick(Object scheduledTask) {
+            engine.setTickBudget(tickBudget);
+            engine.setMaxDeferTicks(maxDeferTicks);
+            engine.run();
+            if (engine.getScheduledEffects() == 0) {
+                //the last effect is done, the task is started again by the next schedule
+                cancel();
+                tickers.remove(uuid, this);
+            }
+        }
+
+        /**
+         * the entity is removed, its effects are cleaned up by the listener
+         */
+        void retire() {
+            tickers.remove(uuid, this);
+        }
+
+        void cancel() {
+            if (task != null) {
+                invoke(cancelTask, task);
+                task = null;
+            }
+        }
+    }
+}
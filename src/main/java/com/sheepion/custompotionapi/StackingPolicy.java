@@ -0,0 +1,28 @@
+package com.sheepion.custompotionapi;
+
+/**
+ * decides what happens when an effect is applied to an entity that already has an effect of the same type.<br>
+ * returned by CustomPotionEffectType#stackingPolicy().
+ *
+ * @author Sheepion
+ */
+public enum StackingPolicy {
+    /**
+     * keep the existing effect, and set its rest duration and amplifier to the new effect's if they are higher.
+     */
+    REFRESH_DURATION,
+    /**
+     * keep the effect with the higher amplifier, the other one is cancelled or not applied.
+     * if the amplifiers are the same, the existing effect is kept with the longer rest duration.
+     */
+    KEEP_STRONGEST,
+    /**
+     * keep the existing effect, and add the new effect's rest duration to it.
+     */
+    ADDITIVE,
+    /**
+     * apply the new effect as another instance, both effects run on their own.
+     * the number of instances is limited by CustomPotionEffectType#maxStacks().
+     */
+    INDEPENDENT
+}
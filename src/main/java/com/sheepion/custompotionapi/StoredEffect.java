@@ -0,0 +1,44 @@
+package com.sheepion.custompotionapi;
+
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * the primitive state of an applied custom potion effect, without the potion item or the shooter.<br>
+ * used to save effects to disk and to keep the effects of offline players.
+ *
+ * @param type          the effect type key
+ * @param duration      the effect's duration
+ * @param restDuration  the effect's rest duration
+ * @param amplifier     the effect's amplifier
+ * @param ambient       the effect's ambient
+ * @param checkInterval the effect's check interval
+ * @param delay         the ticks before the effect starts
+ * @author Sheepion
+ */
+public record StoredEffect(@NotNull NamespacedKey type, int duration, int restDuration, int amplifier, boolean ambient,
+                           int checkInterval, int delay) {
+    /**
+     * @param effect the applied effect
+     * @return the primitive state of the effect
+     */
+    public static @NotNull StoredEffect of(@NotNull CustomPotionEffect effect) {
+        CustomPotionEffectProperty property = effect.getProperty();
+        return new StoredEffect(effect.getEffectType().getKey(), property.getDuration(), property.getRestDuration(),
+                property.getAmplifier(), property.isAmbient(), property.getCheckInterval(), property.getDelay());
+    }
+
+    /**
+     * create an effect with the stored state, it still needs to be applied to an entity.
+     *
+     * @return the effect, null if the effect type is not registered
+     */
+    public @Nullable CustomPotionEffect toEffect() {
+        CustomPotionEffectType effectType = EffectTypeRegistry.get(type);
+        if (effectType == null) {
+            return null;
+        }
+        return new CustomPotionEffect(effectType, new CustomPotionEffectProperty(null, null, duration, restDuration, amplifier, ambient, checkInterval, delay));
+    }
+}